@@ -1,22 +1,46 @@
 package org.learningu.scheduling;
 
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.joda.time.Duration;
 import org.learningu.scheduling.annotations.Initial;
 import org.learningu.scheduling.flags.Flag;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.optimization.ConcurrentOptimizer;
+import org.learningu.scheduling.optimization.TimedOptimizer;
 import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.ScheduleAudit;
+import org.learningu.scheduling.schedule.Schedules;
+import org.learningu.scheduling.schedule.SerialSchedules.SerialCheckpoint;
+import org.learningu.scheduling.util.RandomStreams;
 
 final class Autoscheduler implements Callable<Schedule> {
   private final Program program;
 
-  private final Schedule initialSchedule;
+  /*
+   * Building the initial schedule runs the constructive scheduler, which is wasted work when we
+   * resume from a checkpoint.
+   */
+  private final Provider<Schedule> initialSchedule;
 
-  private final ConcurrentOptimizer<Schedule> optimizer;
+  private final TimedOptimizer<Schedule> optimizer;
+
+  private final RandomStreams streams;
+
+  private final Schedule.Factory factory;
+
+  private final Checkpointer checkpointer;
+
+  private final ExecutorService service;
+
+  private final Logger logger;
 
   @Inject(optional = true)
   @Flag(name = "optimizeTime", optional = true)
@@ -25,11 +49,21 @@ final class Autoscheduler implements Callable<Schedule> {
   @Inject
   Autoscheduler(
       Program program,
-      @Initial Schedule initialSchedule,
-      ConcurrentOptimizer<Schedule> optimizer) {
+      @Initial Provider<Schedule> initialSchedule,
+      TimedOptimizer<Schedule> optimizer,
+      RandomStreams streams,
+      Schedule.Factory factory,
+      Checkpointer checkpointer,
+      ExecutorService service,
+      Logger logger) {
     this.program = program;
     this.initialSchedule = initialSchedule;
     this.optimizer = optimizer;
+    this.streams = streams;
+    this.factory = factory;
+    this.checkpointer = checkpointer;
+    this.service = service;
+    this.logger = logger;
   }
 
   public Program getProgram() {
@@ -37,15 +71,38 @@ final class Autoscheduler implements Callable<Schedule> {
   }
 
   public Schedule getInitialSchedule() {
-    return initialSchedule;
+    return initialSchedule.get();
   }
 
-  public ConcurrentOptimizer<Schedule> getOptimizer() {
+  public TimedOptimizer<Schedule> getOptimizer() {
     return optimizer;
   }
 
   @Override
   public Schedule call() throws Exception {
-    return optimizer.iterate(optimizerTime, initialSchedule);
+    Schedule initial;
+    Duration elapsed = Duration.ZERO;
+    Random stream = streams.root();
+    Optional<SerialCheckpoint> checkpoint = checkpointer.resume();
+    if (checkpoint.isPresent()) {
+      initial = Schedules.deserialize(factory, checkpoint.get().getBest(), service);
+      elapsed = Duration.millis(checkpoint.get().getElapsedMillis());
+      stream = Checkpointer.savedRandom(checkpoint.get()).or(stream);
+    } else {
+      initial = initialSchedule.get();
+    }
+    Random previous = streams.install(stream);
+    Schedule result;
+    try {
+      result = optimizer.iterate(optimizerTime, elapsed, initial);
+    } finally {
+      streams.install(previous);
+    }
+    // the workers are done with the executor by now
+    ScheduleAudit audit = result.audit(service);
+    if (!audit.isClean()) {
+      logger.log(Level.SEVERE, "Optimized schedule has conflicts: {0}", audit);
+    }
+    return result;
   }
 }
@@ -6,7 +6,10 @@ import org.learningu.scheduling.flags.Flags;
 import org.learningu.scheduling.graph.ProgramCacheFlags;
 import org.learningu.scheduling.logic.LocalConflictLogic;
 import org.learningu.scheduling.logic.ScheduleValidator;
+import org.learningu.scheduling.optimization.Annealer;
 import org.learningu.scheduling.optimization.ConcurrentOptimizer;
+import org.learningu.scheduling.schedule.ConstructiveScheduler;
+import org.learningu.scheduling.util.RandomStreams;
 
 /**
  * The first module for autoscheduling, including bindings common to all runs.
@@ -20,6 +23,7 @@ public final class AutoschedulingBaseModule extends AbstractModule {
     install(Flags.flagBindings(
         ProgramCacheFlags.class,
         ConcurrentOptimizer.class,
+        Annealer.class,
         Autoscheduling.class,
         ScheduleValidator.class,
         LocalConflictLogic.class,
@@ -27,6 +31,10 @@ public final class AutoschedulingBaseModule extends AbstractModule {
         AutoschedulerDataSource.class,
         RoomPrettyPrinter.class,
         TeacherPrettyPrinter.class,
-        ScheduleOutputCallback.class));
+        ScheduleOutputCallback.class,
+        RandomStreams.class,
+        ConstructiveScheduler.class,
+        Checkpointer.class,
+        CsvTelemetrySink.class));
   }
 }
@@ -6,12 +6,19 @@ import com.google.inject.Provides;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
 import org.learningu.scheduling.annotations.Initial;
 import org.learningu.scheduling.modules.OptimizerModule;
 import org.learningu.scheduling.modules.ScheduleLogicModule;
+import org.learningu.scheduling.optimization.ProgressListener;
+import org.learningu.scheduling.optimization.TelemetrySink;
+import org.learningu.scheduling.schedule.ConstructiveScheduler;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.Schedules;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialSchedule;
+import org.learningu.scheduling.util.RandomStreams;
 
 public final class AutoschedulingConfigModule extends AbstractModule {
 
@@ -19,6 +26,8 @@ public final class AutoschedulingConfigModule extends AbstractModule {
   protected void configure() {
     install(new OptimizerModule());
     install(new ScheduleLogicModule());
+    bind(new TypeLiteral<ProgressListener<Schedule>>() {}).to(Checkpointer.class);
+    bind(TelemetrySink.class).to(CsvTelemetrySink.class);
     Multibinder<FutureCallback<Schedule>> callbackBinder = Multibinder.newSetBinder(
         binder(),
         new TypeLiteral<FutureCallback<Schedule>>() {});
@@ -29,7 +38,16 @@ public final class AutoschedulingConfigModule extends AbstractModule {
 
   @Provides
   @Initial
-  Schedule initialSchedule(Schedule.Factory factory, SerialSchedule serial) {
-    return Schedules.deserialize(factory, serial);
+  Schedule initialSchedule(
+      Schedule.Factory factory,
+      SerialSchedule serial,
+      ConstructiveScheduler constructor,
+      ExecutorService service) {
+    return constructor.completeIfEmpty(Schedules.deserialize(factory, serial, service));
+  }
+
+  @Provides
+  Random random(RandomStreams streams) {
+    return streams.asRandom();
   }
 }
@@ -0,0 +1,195 @@
+package org.learningu.scheduling;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.protobuf.ByteString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.joda.time.Duration;
+import org.learningu.scheduling.flags.Flag;
+import org.learningu.scheduling.optimization.ProgressListener;
+import org.learningu.scheduling.optimization.Scored;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.ScheduleAudit;
+import org.learningu.scheduling.schedule.Schedules;
+import org.learningu.scheduling.schedule.SerialSchedules.SerialCheckpoint;
+import org.learningu.scheduling.schedule.SerialSchedules.SerialCheckpoint.TracePoint;
+import org.learningu.scheduling.util.RandomStreams;
+
+/**
+ * Periodically saves the best schedule found so far, the trace of improvements to its score, and
+ * the state of the optimizer's random stream, so that a long run can be resumed if it is killed.
+ * Each checkpoint replaces the last by an atomic rename, so a crash mid-write never leaves a
+ * partial checkpoint behind. The best schedule is also audited once per checkpoint interval,
+ * whether or not checkpoints are saved, and any conflicts found are logged.
+ *
+ * @author lowasser
+ */
+@Singleton
+final class Checkpointer implements ProgressListener<Schedule> {
+  private static final String CHECKPOINT_FILE = "checkpoint.pb";
+
+  @Inject
+  @Flag(
+      name = "checkpointDirectory",
+      description = "The directory to save checkpoints of long optimizer runs in, if any")
+  private Optional<File> directory;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "checkpointInterval",
+      description = "The minimum time between checkpoints",
+      optional = true)
+  private Duration interval = Duration.standardMinutes(1);
+
+  @Inject(optional = true)
+  @Flag(
+      name = "resume",
+      description = "Whether to continue from the checkpoint in the checkpoint directory, if there "
+          + "is one",
+      optional = true)
+  private boolean resume = false;
+
+  private final RandomStreams streams;
+
+  private final Logger logger;
+
+  private final List<TracePoint> trace = Lists.newArrayList();
+
+  private long lastCheckpoint = 0;
+
+  private double lastScore = Double.NEGATIVE_INFINITY;
+
+  @Inject
+  Checkpointer(RandomStreams streams, Logger logger) {
+    this.streams = streams;
+    this.logger = logger;
+  }
+
+  /**
+   * If resuming was requested and a checkpoint exists, returns it, and continues its trace from
+   * where it left off.
+   */
+  Optional<SerialCheckpoint> resume() throws IOException {
+    if (!resume || !directory.isPresent()) {
+      return Optional.absent();
+    }
+    File file = new File(directory.get(), CHECKPOINT_FILE);
+    if (!file.exists()) {
+      logger.log(Level.WARNING, "No checkpoint to resume from in {0}", directory.get());
+      return Optional.absent();
+    }
+    FileInputStream stream = new FileInputStream(file);
+    SerialCheckpoint checkpoint;
+    try {
+      checkpoint = SerialCheckpoint.parseFrom(stream);
+    } finally {
+      stream.close();
+    }
+    trace.clear();
+    trace.addAll(checkpoint.getTraceList());
+    lastCheckpoint = checkpoint.getElapsedMillis();
+    lastScore = checkpoint.getScore();
+    logger.log(Level.INFO, "Resuming from checkpoint with score {0} after {1} ms", new Object[] {
+        checkpoint.getScore(), checkpoint.getElapsedMillis() });
+    return Optional.of(checkpoint);
+  }
+
+  /**
+   * Returns the random stream saved in the specified checkpoint, if any.
+   */
+  static Optional<Random> savedRandom(SerialCheckpoint checkpoint) throws IOException {
+    if (!checkpoint.hasRandomState()) {
+      return Optional.absent();
+    }
+    ObjectInputStream stream = new ObjectInputStream(checkpoint.getRandomState().newInput());
+    try {
+      return Optional.of((Random) stream.readObject());
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Could not read saved random state: " + e);
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Override
+  public void onProgress(long elapsed, Scored<Schedule> best) {
+    if (best.getScore() > lastScore) {
+      trace.add(TracePoint
+          .newBuilder()
+          .setElapsedMillis(elapsed)
+          .setScore(best.getScore())
+          .build());
+      lastScore = best.getScore();
+    }
+    if (elapsed - lastCheckpoint < interval.getMillis()) {
+      return;
+    }
+    lastCheckpoint = elapsed;
+    // a full audit is too slow to run on every new best, which may be many times a second
+    ScheduleAudit audit = best.getState().audit();
+    if (!audit.isClean()) {
+      logger.log(Level.SEVERE, "Best schedule has conflicts: {0}", audit);
+    }
+    if (!directory.isPresent()) {
+      return;
+    }
+    try {
+      write(SerialCheckpoint
+          .newBuilder()
+          .setBest(Schedules.serialize(best.getState()))
+          .setScore(best.getScore())
+          .setElapsedMillis(elapsed)
+          .addAllTrace(trace)
+          .setRandomState(serialize(streams.current()))
+          .build());
+      logger.log(Level.FINE, "Wrote checkpoint after {0} ms", elapsed);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not write checkpoint", e);
+    }
+  }
+
+  private void write(SerialCheckpoint checkpoint) throws IOException {
+    File dir = directory.get();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create checkpoint directory " + dir);
+    }
+    File temp = new File(dir, CHECKPOINT_FILE + ".tmp");
+    FileOutputStream stream = new FileOutputStream(temp);
+    try {
+      checkpoint.writeTo(stream);
+      stream.getFD().sync();
+    } finally {
+      stream.close();
+    }
+    File target = new File(dir, CHECKPOINT_FILE);
+    // some platforms will not rename over an existing file
+    if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target))) {
+      throw new IOException("Could not rename " + temp + " to " + target);
+    }
+  }
+
+  private static ByteString serialize(Random random) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream stream = new ObjectOutputStream(bytes);
+    try {
+      stream.writeObject(random);
+    } finally {
+      stream.close();
+    }
+    return ByteString.copyFrom(bytes.toByteArray());
+  }
+}
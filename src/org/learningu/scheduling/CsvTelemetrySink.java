@@ -0,0 +1,239 @@
+package org.learningu.scheduling;
+
+import com.google.common.base.Charsets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.learningu.scheduling.flags.Flag;
+import org.learningu.scheduling.logic.ChainedScheduleLogic;
+import org.learningu.scheduling.logic.LogicStatistics;
+import org.learningu.scheduling.optimization.PassStatistics;
+import org.learningu.scheduling.optimization.TelemetrySink;
+import org.learningu.scheduling.pretty.Csv;
+
+/**
+ * Streams a row of telemetry to a CSV file for every pass of every worker, as it happens, along
+ * with how many validations each schedule logic has failed so far, its reject rate, and how long
+ * its checks take.
+ *
+ * <p>
+ * Workers only offer the raw numbers for their rows to a bounded queue, which a single background
+ * thread formats and drains to the file, so neither formatting nor a slow disk holds up the
+ * optimization. If the queue is full, the row is dropped and counted instead.
+ *
+ * @author lowasser
+ */
+@Singleton
+final class CsvTelemetrySink implements TelemetrySink {
+  private static final long FLUSH_POLL_MILLIS = 10;
+
+  /*
+   * How long the writer thread waits between bursts, so that rows accumulate in the queue instead
+   * of every worker waking the writer for each row it offers.
+   */
+  private static final long WRITE_INTERVAL_MILLIS = 50;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "telemetryFile",
+      description = "The file to stream optimization telemetry to",
+      optional = true)
+  private File file = new File("optimization-log.csv");
+
+  @Inject(optional = true)
+  @Flag(
+      name = "telemetryQueueSize",
+      description = "The number of telemetry rows to buffer before dropping new ones",
+      optional = true)
+  private int queueSize = 4096;
+
+  private final ChainedScheduleLogic logic;
+
+  private final Logger logger;
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  /*
+   * The number of rows queued that have not yet been flushed to the file.
+   */
+  private final AtomicLong pending = new AtomicLong();
+
+  private boolean started = false;
+
+  private volatile BlockingQueue<Sample> queue;
+
+  private Writer writer;
+
+  private volatile boolean failed = false;
+
+  @Inject
+  CsvTelemetrySink(ChainedScheduleLogic logic, Logger logger) {
+    this.logic = logic;
+    this.logger = logger;
+  }
+
+  @Override
+  public void record(long elapsedMillis, int worker, double bestScore, PassStatistics pass) {
+    BlockingQueue<Sample> queue = (this.queue == null) ? start() : this.queue;
+    if (queue == null || failed) {
+      return;
+    }
+    Sample sample =
+        new Sample(elapsedMillis, worker, bestScore, pass, logic.snapshotCounts());
+    pending.incrementAndGet();
+    if (!queue.offer(sample)) {
+      pending.decrementAndGet();
+      dropped.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void flush() {
+    if (queue == null) {
+      return;
+    }
+    try {
+      while (pending.get() > 0 && !failed) {
+        Thread.sleep(FLUSH_POLL_MILLIS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    long droppedRows = dropped.getAndSet(0);
+    if (droppedRows > 0) {
+      logger.log(Level.WARNING, "Dropped {0} telemetry rows that arrived too quickly", droppedRows);
+    }
+  }
+
+  /*
+   * Opens the file and starts the writer thread on the first row, returning the queue, or null if
+   * the file could not be opened.
+   */
+  private synchronized BlockingQueue<Sample> start() {
+    if (!started) {
+      started = true;
+      try {
+        writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file),
+            Charsets.UTF_8));
+        writer.write(header().toString());
+        writer.write('\n');
+        writer.flush();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not open telemetry file " + file, e);
+        return null;
+      }
+      queue = new ArrayBlockingQueue<Sample>(queueSize);
+      Thread writerThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      }, "telemetry-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    }
+    return queue;
+  }
+
+  private Csv.Row header() {
+    Csv.RowBuilder header = Csv
+        .newRowBuilder()
+        .add("elapsedMillis")
+        .add("worker")
+        .add("bestScore")
+        .add("currentScore")
+        .add("temperature")
+        .add("acceptRate")
+        .add("proposalsPerSecond");
+    for (LogicStatistics statistics : logic.getStatistics()) {
+      header
+          .add("%s failures", statistics.getName())
+          .add("%s rejectRate", statistics.getName())
+          .add("%s meanNanos", statistics.getName());
+    }
+    return header.build();
+  }
+
+  /*
+   * Writes rows in bursts, flushing whenever the queue runs dry, so the file is never more than one
+   * burst behind.
+   */
+  private void drain() {
+    try {
+      while (true) {
+        Sample sample = queue.take();
+        int written = 0;
+        do {
+          writer.write(sample.toRow(logic).toString());
+          writer.write('\n');
+          written++;
+        } while ((sample = queue.poll()) != null);
+        writer.flush();
+        pending.addAndGet(-written);
+        Thread.sleep(WRITE_INTERVAL_MILLIS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not write telemetry to " + file, e);
+      failed = true;
+      queue.clear();
+    }
+  }
+
+  /**
+   * The numbers for one row of telemetry, formatted only once they reach the writer thread.
+   */
+  private static final class Sample {
+    private final long elapsedMillis;
+    private final int worker;
+    private final double bestScore;
+    private final PassStatistics pass;
+    private final long[] logicCounts;
+
+    Sample(
+        long elapsedMillis,
+        int worker,
+        double bestScore,
+        PassStatistics pass,
+        long[] logicCounts) {
+      this.elapsedMillis = elapsedMillis;
+      this.worker = worker;
+      this.bestScore = bestScore;
+      this.pass = pass;
+      this.logicCounts = logicCounts;
+    }
+
+    Csv.Row toRow(ChainedScheduleLogic logic) {
+      Csv.RowBuilder row = Csv
+          .newRowBuilder()
+          .add("%d", elapsedMillis)
+          .add("%d", worker)
+          .add("%f", bestScore)
+          .add("%f", pass.getCurrentScore())
+          .add("%f", pass.getTemperature())
+          .add("%f", pass.acceptRate())
+          .add("%f", pass.proposalsPerSecond());
+      for (LogicStatistics statistics : logic.getStatistics(logicCounts)) {
+        row
+            .add("%d", statistics.getFailures())
+            .add("%f", statistics.rejectRate())
+            .add("%f", statistics.getMeanNanos());
+      }
+      return row.build();
+    }
+  }
+}
@@ -31,6 +31,13 @@ public final class Converters {
     }
   };
 
+  private static final Converter<Long> LONG_CONVERTER = new Converter<Long>() {
+    @Override
+    public Long parse(String string) {
+      return Long.valueOf(string);
+    }
+  };
+
   private static final Converter<Boolean> BOOLEAN_CONVERTER = new Converter<Boolean>() {
     @Override
     public Boolean parse(String string) {
@@ -179,6 +186,9 @@ public final class Converters {
     } else if (literal.getRawType().equals(Integer.class)
         || literal.getRawType().equals(int.class)) {
       return (Converter<T>) INT_CONVERTER;
+    } else if (literal.getRawType().equals(Long.class)
+        || literal.getRawType().equals(long.class)) {
+      return (Converter<T>) LONG_CONVERTER;
     } else if (literal.getRawType().equals(String.class)) {
       return (Converter<T>) STRING_CONVERTER;
     } else if (literal.getRawType().equals(File.class)) {
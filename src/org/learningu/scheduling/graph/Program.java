@@ -16,6 +16,7 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableBiMap.Builder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
@@ -58,6 +59,12 @@ public final class Program {
 
   final ImmutableBiMap<Integer, Subject> subjects;
 
+  private final ImmutableList<Section> sectionsByOrdinal;
+
+  private final ImmutableList<Room> roomsByOrdinal;
+
+  private final ImmutableList<ClassPeriod> periodsByOrdinal;
+
   private final ImmutableSetMultimap<Course, Section> courseMap;
 
   private final ImmutableSetMultimap<Teacher, Course> teachingMap;
@@ -119,6 +126,9 @@ public final class Program {
     resources = programObjectSet(Lists.transform(
         serial.getResourceList(),
         Resource.programWrapper(this)));
+    sectionsByOrdinal = sections.values().asList();
+    roomsByOrdinal = rooms.values().asList();
+    periodsByOrdinal = periods.values().asList();
 
     // initialize courseMap
     BiMap<Integer, Course> courseBuilder = HashBiMap.create();
@@ -256,7 +266,9 @@ public final class Program {
   private static <T extends ProgramObject<?>> ImmutableBiMap<Integer, T> programObjectSet(
       Iterable<T> collection) {
     Builder<Integer, T> builder = ImmutableBiMap.builder();
+    int ordinal = 0;
     for (T t : collection) {
+      t.ordinal = ordinal++;
       builder.put(t.getId(), t);
     }
     return builder.build();
@@ -335,6 +347,18 @@ public final class Program {
     return section;
   }
 
+  public Section getSectionByOrdinal(int ordinal) {
+    return sectionsByOrdinal.get(ordinal);
+  }
+
+  public Room getRoomByOrdinal(int ordinal) {
+    return roomsByOrdinal.get(ordinal);
+  }
+
+  public ClassPeriod getPeriodByOrdinal(int ordinal) {
+    return periodsByOrdinal.get(ordinal);
+  }
+
   private void checkTeachersValid() {
     for (Teacher t : getTeachers()) {
       t.getCompatiblePeriods();
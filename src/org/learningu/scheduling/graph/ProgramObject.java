@@ -27,6 +27,11 @@ public abstract class ProgramObject<T extends Message & MessageOrBuilder> {
   final Program program;
   final T serial;
 
+  /*
+   * Assigned by the program when it builds its object graph.
+   */
+  int ordinal = -1;
+
   ProgramObject(Program program, T serial) {
     this.program = checkNotNull(program);
     this.serial = checkNotNull(serial);
@@ -34,6 +39,14 @@ public abstract class ProgramObject<T extends Message & MessageOrBuilder> {
 
   public abstract int getId();
 
+  /**
+   * Returns the position of this object among all the objects of its type in its program, which
+   * is suitable for indexing dense arrays.
+   */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
   @Override
   public String toString() {
     return TextFormat.printToString(serial);
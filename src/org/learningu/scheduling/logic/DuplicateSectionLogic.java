@@ -1,7 +1,6 @@
 package org.learningu.scheduling.logic;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableList;
 
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
@@ -14,23 +13,18 @@ import org.learningu.scheduling.schedule.StartAssignment;
 public final class DuplicateSectionLogic extends ScheduleLogic {
 
   @Override
-  public void validate(
-      ScheduleValidator validator,
-      Schedule schedule,
-      final StartAssignment assignment) {
+  public void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    Iterable<StartAssignment> duplicates = Iterables.filter(
-        schedule.getStartAssignments(),
-        new Predicate<StartAssignment>() {
-          @Override
-          public boolean apply(StartAssignment input) {
-            return input.getSection().equals(assignment.getSection());
-          }
-        });
+    StartAssignment existing = schedule.assignmentOf(assignment.getSection());
     validator.validateGlobal(
         assignment,
-        duplicates,
+        (existing == null) ? ImmutableList.<StartAssignment> of() : ImmutableList.of(existing),
         "sections must not already be scheduled in the schedule");
   }
 
+  @Override
+  public Scope getScope() {
+    return Scope.DYNAMIC_LOCAL;
+  }
+
 }
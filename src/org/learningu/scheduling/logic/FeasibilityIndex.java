@@ -0,0 +1,165 @@
+package org.learningu.scheduling.logic;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+/**
+ * A precomputed index of which (room, start period) slots each section could be assigned to,
+ * considering only the checks of a schedule logic that depend on the program and not on the rest
+ * of the schedule: room capacities, teacher and room availability, grade ranges, and so on.
+ * 
+ * <p>
+ * Slots are numbered {@code room.getOrdinal() * periodCount + period.getOrdinal()}, where
+ * {@code periodCount} is the number of periods in the whole program.
+ * 
+ * @author lowasser
+ */
+public final class FeasibilityIndex {
+  /**
+   * Builds the feasibility index of the specified logic for the specified program, checking each
+   * section in parallel on the specified executor.
+   */
+  public static FeasibilityIndex build(
+      final Program program,
+      final ScheduleLogic logic,
+      ExecutorService service) {
+    checkNotNull(program);
+    checkNotNull(logic);
+    List<Callable<BitSet>> tasks = Lists.newArrayListWithCapacity(program.getSections().size());
+    for (final Section section : program.getSections()) {
+      tasks.add(new Callable<BitSet>() {
+        @Override
+        public BitSet call() {
+          return feasibleSlots(program, logic, section);
+        }
+      });
+    }
+    BitSet[] slots = new BitSet[tasks.size()];
+    try {
+      List<Future<BitSet>> futures = service.invokeAll(tasks);
+      for (int i = 0; i < slots.length; i++) {
+        slots[i] = futures.get(i).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    return new FeasibilityIndex(program, slots);
+  }
+
+  private static BitSet feasibleSlots(Program program, ScheduleLogic logic, Section section) {
+    int periodCount = program.getPeriods().size();
+    BitSet slots = new BitSet(program.getRooms().size() * periodCount);
+    for (Room room : program.getRooms()) {
+      for (ClassPeriod period : program.getPeriods()) {
+        if (StartAssignment.fitsInBlock(period, section)
+            && logic.isStaticallyFeasible(StartAssignment.create(period, room, section))) {
+          slots.set(room.getOrdinal() * periodCount + period.getOrdinal());
+        }
+      }
+    }
+    return slots;
+  }
+
+  private final Program program;
+
+  private final int periodCount;
+
+  /*
+   * The feasible slots of each section, indexed by section ordinal.
+   */
+  private final BitSet[] slots;
+
+  /*
+   * The feasible slots of each section in increasing order, for enumeration and sampling.
+   */
+  private final int[][] slotLists;
+
+  private FeasibilityIndex(Program program, BitSet[] slots) {
+    this.program = program;
+    this.periodCount = program.getPeriods().size();
+    this.slots = slots;
+    this.slotLists = new int[slots.length][];
+    for (int s = 0; s < slots.length; s++) {
+      int[] list = new int[slots[s].cardinality()];
+      int j = 0;
+      for (int slot = slots[s].nextSetBit(0); slot >= 0; slot = slots[s].nextSetBit(slot + 1)) {
+        list[j++] = slot;
+      }
+      slotLists[s] = list;
+    }
+  }
+
+  public Program getProgram() {
+    return program;
+  }
+
+  /**
+   * Returns whether this index describes the program of the specified assignment.
+   */
+  public boolean covers(StartAssignment assignment) {
+    return assignment.getProgram() == program;
+  }
+
+  public boolean isFeasible(StartAssignment assignment) {
+    return isFeasible(assignment.getSection(), assignment.getRoom(), assignment.getPeriod());
+  }
+
+  /**
+   * Returns whether the specified section could start in the specified room and period, as far as
+   * the static checks are concerned. Unlike {@link StartAssignment#create}, this does not throw if
+   * the section would overrun its time block; such slots are simply infeasible.
+   */
+  public boolean isFeasible(Section section, Room room, ClassPeriod period) {
+    return slots[section.getOrdinal()].get(slot(room, period));
+  }
+
+  /**
+   * Returns the number of feasible slots for the specified section.
+   */
+  public int feasibleSlotCount(Section section) {
+    return slotLists[section.getOrdinal()].length;
+  }
+
+  /**
+   * Returns the {@code i}th feasible slot for the specified section, as a start assignment.
+   */
+  public StartAssignment feasibleSlot(Section section, int i) {
+    int slot = slotLists[section.getOrdinal()][i];
+    return StartAssignment.create(
+        periodOfSlot(slot),
+        program.getRoomByOrdinal(slot / periodCount),
+        section);
+  }
+
+  public int slot(Room room, ClassPeriod period) {
+    return room.getOrdinal() * periodCount + period.getOrdinal();
+  }
+
+  private ClassPeriod periodOfSlot(int slot) {
+    return program.getPeriodByOrdinal(slot % periodCount);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("program", program.getName()).toString();
+  }
+}
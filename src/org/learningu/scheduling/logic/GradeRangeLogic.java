@@ -6,6 +6,7 @@ import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Course;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
 
 public final class GradeRangeLogic extends ScheduleLogic {
   @Inject
@@ -25,4 +26,20 @@ public final class GradeRangeLogic extends ScheduleLogic {
         "Classes must be scheduled during periods that allow each of the appropriate grades");
   }
 
+  @Override
+  public boolean isStaticallyFeasible(StartAssignment assignment) {
+    Course course = assignment.getCourse();
+    for (ClassPeriod period : assignment.getPresentPeriods()) {
+      if (!period.getGradeRange().encloses(course.getGradeRange())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isStatic() {
+    return true;
+  }
+
 }
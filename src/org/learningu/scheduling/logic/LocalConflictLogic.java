@@ -1,6 +1,9 @@
 package org.learningu.scheduling.logic;
 
+import java.util.Set;
+
 import org.learningu.scheduling.flags.Flag;
+import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
@@ -34,9 +37,7 @@ public final class LocalConflictLogic extends ScheduleLogic {
   @Override
   public void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    Section course = assignment.getSection();
-    Room room = assignment.getRoom();
-    double classSizeRatio = ((double) room.getCapacity()) / course.getMaxClassSize();
+    double classSizeRatio = classSizeRatio(assignment);
     validator.validateLocal(
         classSizeRatio <= maxClassCapRatio,
         assignment,
@@ -62,4 +63,32 @@ public final class LocalConflictLogic extends ScheduleLogic {
         assignment,
         "Courses cannot be scheduled to rooms while the room is unavailable");
   }
+
+  private static double classSizeRatio(StartAssignment assignment) {
+    Section course = assignment.getSection();
+    Room room = assignment.getRoom();
+    return ((double) room.getCapacity()) / course.getMaxClassSize();
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(StartAssignment assignment) {
+    double classSizeRatio = classSizeRatio(assignment);
+    if (classSizeRatio > maxClassCapRatio || classSizeRatio < minClassCapRatio) {
+      return false;
+    }
+    Program program = assignment.getProgram();
+    Set<ClassPeriod> teachersAvailable = program.compatiblePeriods(assignment.getSection());
+    Set<ClassPeriod> roomAvailable = program.compatiblePeriods(assignment.getRoom());
+    for (ClassPeriod period : assignment.getPresentPeriods()) {
+      if (!teachersAvailable.contains(period) || !roomAvailable.contains(period)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isStatic() {
+    return true;
+  }
 }
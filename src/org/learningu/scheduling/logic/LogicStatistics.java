@@ -0,0 +1,79 @@
+package org.learningu.scheduling.logic;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+import org.learningu.scheduling.logic.ScheduleLogic.Scope;
+
+/**
+ * How a single sub-logic of a {@link ChainedScheduleLogic} has fared so far: how many checks it
+ * has run and failed -- one for each start assignment validated, and one for each period the
+ * assignment covers -- and how long a check takes it on average.
+ *
+ * @author lowasser
+ */
+public final class LogicStatistics {
+  private final String name;
+
+  private final Scope scope;
+
+  private final long validations;
+
+  private final long failures;
+
+  private final double meanNanos;
+
+  LogicStatistics(String name, Scope scope, long validations, long failures, double meanNanos) {
+    this.name = checkNotNull(name);
+    this.scope = checkNotNull(scope);
+    this.validations = validations;
+    this.failures = failures;
+    this.meanNanos = meanNanos;
+  }
+
+  /**
+   * Returns the simple class name of the logic.
+   */
+  public String getName() {
+    return name;
+  }
+
+  public Scope getScope() {
+    return scope;
+  }
+
+  public long getValidations() {
+    return validations;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * Returns the average time a check by this logic takes, estimated from a sample of them.
+   */
+  public double getMeanNanos() {
+    return meanNanos;
+  }
+
+  /**
+   * Returns the fraction of checks this logic has failed.
+   */
+  public double rejectRate() {
+    return (validations == 0) ? 0.0 : ((double) failures) / validations;
+  }
+
+  @Override
+  public String toString() {
+    return Objects
+        .toStringHelper(this)
+        .add("name", name)
+        .add("scope", scope)
+        .add("validations", validations)
+        .add("failures", failures)
+        .add("meanNanos", meanNanos)
+        .toString();
+  }
+}
@@ -1,27 +1,22 @@
 package org.learningu.scheduling.logic;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 
 import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Resource;
-import org.learningu.scheduling.graph.Room;
-import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 import org.learningu.scheduling.util.Shuffle;
 
 public final class ResourceLogic extends ScheduleLogic {
+  private static final String CONDITION = "Not enough floating resources to go around";
+
   /*
    * When many classes request the same floating resource, we pick one randomly to conflict with.
    */
@@ -35,50 +30,46 @@ public final class ResourceLogic extends ScheduleLogic {
   @Override
   public void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    Program program = schedule.getProgram();
-    Room room = assignment.getRoom();
-    Section course = assignment.getSection();
-    Set<Resource> courseRequirements = program.resourceRequirements(course);
-
-    Set<Resource> bindingResources = program.bindingResources(room);
     validator.validateLocal(
-        courseRequirements.containsAll(bindingResources),
+        isStaticallyFeasible(assignment),
         assignment,
         "Room contains all binding resources");
   }
 
+  @Override
+  public boolean isStaticallyFeasible(StartAssignment assignment) {
+    Program program = assignment.getProgram();
+    Set<Resource> courseRequirements = program.resourceRequirements(assignment.getSection());
+    return courseRequirements.containsAll(program.bindingResources(assignment.getRoom()));
+  }
+
   @Override
   public
       void
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
     Program program = schedule.getProgram();
-    Room room = assignment.getRoom();
-    Section course = assignment.getSection();
     ClassPeriod period = assignment.getPeriod();
-    Set<Resource> courseRequirements = Sets.newHashSet(program.resourceRequirements(course));
-    courseRequirements.removeAll(program.roomResources(room));
-    if (courseRequirements.isEmpty()) {
-      return;
-    }
-
-    ListMultimap<Resource, PresentAssignment> resourceDemands = ArrayListMultimap.create();
-    for (PresentAssignment concurrent : schedule.occurringAt(period).values()) {
-      for (Resource resource : program.resourceRequirements(concurrent.getSection())) {
-        if (courseRequirements.contains(resource)) {
-          resourceDemands.put(resource, concurrent);
-        }
+    Set<Resource> roomResources = program.roomResources(assignment.getRoom());
+    /*
+     * The schedule keeps count of how many floating copies of each resource are in use each period,
+     * so this takes time proportional to the requirements of the course; we only go looking for
+     * the other holders of a resource once we know there aren't enough to go around.
+     */
+    for (Resource resource : program.resourceRequirements(assignment.getSection())) {
+      if (roomResources.contains(resource)) {
+        continue;
       }
-    }
-
-    for (Entry<Resource, Collection<PresentAssignment>> resourceEntry : resourceDemands
-        .asMap()
-        .entrySet()) {
-      Resource resource = resourceEntry.getKey();
-      List<PresentAssignment> concurrent = (List<PresentAssignment>) resourceEntry.getValue();
-      if (concurrent.size() >= resource.getFloatingCount()) {
-        int k = concurrent.size() + 1 - resource.getFloatingCount();
-        List<PresentAssignment> conflicts = Shuffle.shuffleK(concurrent, k, rand);
+      int demand = schedule.floatingDemand(resource, period);
+      if (demand > 0 && demand >= resource.getFloatingCount()) {
+        if (validator.isFailFast()) {
+          // there is no need to pick the conflicting holders, only to know that there are some
+          validator.failGlobal(CONDITION);
+          return;
+        }
+        List<PresentAssignment> holders = schedule.floatingHolders(resource, period);
+        int k = Math.min(holders.size(), holders.size() + 1 - resource.getFloatingCount());
+        List<PresentAssignment> conflicts = Shuffle.shuffleK(holders, k, rand);
         validator.validateGlobal(assignment, conflicts, "Not enough of " + resource
             + " to go around");
       }
@@ -9,15 +9,23 @@ import org.learningu.scheduling.schedule.Schedule;
  * @author lowasser
  */
 public final class RoomConflictLogic extends ScheduleLogic {
+  private static final String CONDITION = "Classes may not use the same room at the same time";
 
   @Override
   public
       void
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
+    if (validator.isFailFast()) {
+      // there is no need to find the conflicting assignments, only to know that there are some
+      if (schedule.isOccupied(assignment.getPeriod(), assignment.getRoom())) {
+        validator.failGlobal(CONDITION);
+      }
+      return;
+    }
     validator.validateGlobal(
         assignment,
         schedule.occurringAt(assignment.getPeriod(), assignment.getRoom()).asSet(),
-        "Classes may not use the same room at the same time");
+        CONDITION);
   }
 }
@@ -35,4 +35,47 @@ public abstract class ScheduleLogic {
     checkNotNull(schedule);
     checkNotNull(assignment);
   }
+
+  /**
+   * Returns whether the specified assignment passes every check of this logic that depends only on
+   * the program, and not on the rest of the schedule. Used to build a {@link FeasibilityIndex}.
+   */
+  public boolean isStaticallyFeasible(StartAssignment assignment) {
+    return true;
+  }
+
+  /**
+   * Returns whether every check this logic makes depends only on the program, so that
+   * {@link #isStaticallyFeasible} is exactly equivalent to validation.
+   */
+  public boolean isStatic() {
+    return false;
+  }
+
+  /**
+   * Returns how much of the schedule this logic's checks examine, which bounds how expensive they
+   * can be. {@link ChainedScheduleLogic} runs logics with narrower scopes first.
+   */
+  public Scope getScope() {
+    return isStatic() ? Scope.STATIC_LOCAL : Scope.GLOBAL;
+  }
+
+  /**
+   * How much of the schedule the checks of a logic examine.
+   */
+  public enum Scope {
+    /**
+     * The checks depend only on the assignment and the program.
+     */
+    STATIC_LOCAL,
+    /**
+     * The checks also look up where particular sections are scheduled, such as the section being
+     * assigned or its prerequisites.
+     */
+    DYNAMIC_LOCAL,
+    /**
+     * The checks compare the assignment against the other classes in the periods it occupies.
+     */
+    GLOBAL;
+  }
 }
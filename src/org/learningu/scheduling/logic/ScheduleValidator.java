@@ -1,7 +1,10 @@
 package org.learningu.scheduling.logic;
 
+import static com.google.common.base.Preconditions.checkState;
+
 import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
@@ -10,6 +13,8 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+
 import org.learningu.scheduling.flags.Flag;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.StartAssignment;
@@ -18,9 +23,23 @@ import org.learningu.scheduling.schedule.StartAssignment;
  * A cumulative validator for schedules, accumulating any conflicts found for later analysis or
  * corrective action.
  * 
+ * <p>
+ * A {@linkplain #failFast() fail-fast} validator instead only tracks whether validation has failed,
+ * and the condition that failed first. It builds no conflicts and logs nothing, and schedule logics
+ * may stop at its first failure, so it is the one to use when all that matters is whether an
+ * assignment can be made.
+ * 
  * @author lowasser
  */
 public final class ScheduleValidator {
+  /**
+   * Returns a new validator that only tracks whether validation has failed, and the condition that
+   * failed first.
+   */
+  public static ScheduleValidator failFast() {
+    return new ScheduleValidator(null, true);
+  }
+
   private final List<LocalConflict<StartAssignment>> localStartConflicts;
 
   private final List<LocalConflict<PresentAssignment>> localPresentConflicts;
@@ -29,8 +48,18 @@ public final class ScheduleValidator {
 
   private final List<GlobalConflict<StartAssignment>> globalStartConflicts;
 
+  @Nullable
   private final Logger logger;
 
+  private final boolean failFast;
+
+  private int failures = 0;
+
+  private boolean locallyValid = true;
+
+  @Nullable
+  private String firstFailure = null;
+
   @Flag(
       name = "validateLogLevel",
       description = "Level at which to log each validation attempt",
@@ -45,11 +74,39 @@ public final class ScheduleValidator {
 
   @Inject
   ScheduleValidator(Logger logger) {
+    this(logger, false);
+  }
+
+  private ScheduleValidator(@Nullable Logger logger, boolean failFast) {
     this.logger = logger;
-    this.localStartConflicts = Lists.newArrayList();
-    this.localPresentConflicts = Lists.newArrayList();
-    this.globalPresentConflicts = Lists.newArrayList();
-    this.globalStartConflicts = Lists.newArrayList();
+    this.failFast = failFast;
+    if (failFast) {
+      this.localStartConflicts = ImmutableList.of();
+      this.localPresentConflicts = ImmutableList.of();
+      this.globalPresentConflicts = ImmutableList.of();
+      this.globalStartConflicts = ImmutableList.of();
+    } else {
+      this.localStartConflicts = Lists.newArrayList();
+      this.localPresentConflicts = Lists.newArrayList();
+      this.globalPresentConflicts = Lists.newArrayList();
+      this.globalStartConflicts = Lists.newArrayList();
+    }
+  }
+
+  /**
+   * Returns whether this validator only tracks whether validation has failed, in which case its
+   * conflict lists are always empty.
+   */
+  public boolean isFailFast() {
+    return failFast;
+  }
+
+  /**
+   * Returns the condition of the first check that failed, or {@code null} if none has.
+   */
+  @Nullable
+  public String getFirstFailure() {
+    return firstFailure;
   }
 
   public List<LocalConflict<StartAssignment>> getLocalStartConflicts() {
@@ -72,29 +129,68 @@ public final class ScheduleValidator {
     logger.log(level, message, params);
   }
 
+  /*
+   * Avoids building the varargs array for log messages that would be discarded anyway.
+   */
+  private boolean isLoggable(Level level) {
+    return logger.isLoggable(level);
+  }
+
+  private void fail(boolean local, String condition) {
+    failures++;
+    if (local) {
+      locallyValid = false;
+    }
+    if (firstFailure == null) {
+      firstFailure = condition;
+    }
+  }
+
   public void validateLocal(boolean cond, StartAssignment assignment, String condition) {
-    log(
-        validateLogLevel,
-        "Doing local validation on {0} for condition: {1}",
-        assignment,
-        condition);
+    if (failFast) {
+      if (!cond) {
+        fail(true, condition);
+      }
+      return;
+    }
+    if (isLoggable(validateLogLevel)) {
+      log(
+          validateLogLevel,
+          "Doing local validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
     if (!cond) {
       LocalConflict<StartAssignment> conflict = LocalConflict.create(assignment, condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (isLoggable(failureLogLevel)) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       localStartConflicts.add(conflict);
+      fail(true, condition);
     }
   }
 
   public void validateLocal(boolean cond, PresentAssignment assignment, String condition) {
-    log(
-        validateLogLevel,
-        "Doing local validation on {0} for condition: {1}",
-        assignment,
-        condition);
+    if (failFast) {
+      if (!cond) {
+        fail(true, condition);
+      }
+      return;
+    }
+    if (isLoggable(validateLogLevel)) {
+      log(
+          validateLogLevel,
+          "Doing local validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
     if (!cond) {
       LocalConflict<PresentAssignment> conflict = LocalConflict.create(assignment, condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (isLoggable(failureLogLevel)) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       localPresentConflicts.add(conflict);
+      fail(true, condition);
     }
   }
 
@@ -110,18 +206,29 @@ public final class ScheduleValidator {
       StartAssignment assignment,
       Iterable<StartAssignment> conflicting,
       String condition) {
-    log(
-        validateLogLevel,
-        "Doing global validation on {0} for condition: {1}",
-        assignment,
-        condition);
+    if (failFast) {
+      if (!cond && !Iterables.isEmpty(conflicting)) {
+        fail(false, condition);
+      }
+      return;
+    }
+    if (isLoggable(validateLogLevel)) {
+      log(
+          validateLogLevel,
+          "Doing global validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
     if (!cond && !Iterables.isEmpty(conflicting)) {
       GlobalConflict<StartAssignment> conflict = GlobalConflict.create(
           assignment,
           conflicting,
           condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (isLoggable(failureLogLevel)) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       globalStartConflicts.add(conflict);
+      fail(false, condition);
     }
   }
 
@@ -137,32 +244,63 @@ public final class ScheduleValidator {
       PresentAssignment assignment,
       Iterable<PresentAssignment> conflicting,
       String condition) {
-    log(
-        validateLogLevel,
-        "Doing global validation on {0} for condition: {1}",
-        assignment,
-        condition);
+    if (failFast) {
+      if (!cond && !Iterables.isEmpty(conflicting)) {
+        fail(false, condition);
+      }
+      return;
+    }
+    if (isLoggable(validateLogLevel)) {
+      log(
+          validateLogLevel,
+          "Doing global validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
     if (!cond && !Iterables.isEmpty(conflicting)) {
       GlobalConflict<PresentAssignment> conflict = GlobalConflict.create(
           assignment,
           conflicting,
           condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (isLoggable(failureLogLevel)) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       globalPresentConflicts.add(conflict);
+      fail(false, condition);
     }
   }
 
+  /**
+   * Records that a check of the specified condition failed against other assignments, without
+   * naming them. Only fail-fast validators, which do not record conflicting assignments anyway,
+   * accept this; it lets schedule logics skip looking up the conflicting assignments.
+   */
+  public void failGlobal(String condition) {
+    checkState(failFast, "Only fail-fast validators may skip the conflicting assignments");
+    fail(false, condition);
+  }
+
+  /**
+   * Returns the number of conflicts found so far.
+   */
+  int conflictCount() {
+    return failures;
+  }
+
   public boolean isLocallyValid() {
-    return localStartConflicts.isEmpty() && localPresentConflicts.isEmpty();
+    return locallyValid;
   }
 
   public boolean isValid() {
-    return isLocallyValid() && globalPresentConflicts.isEmpty() && globalStartConflicts.isEmpty();
+    return failures == 0;
   }
 
   @Override
   public String toString() {
     ToStringHelper helper = Objects.toStringHelper(this);
+    if (failFast) {
+      return helper.add("firstFailure", firstFailure).toString();
+    }
     if (!localStartConflicts.isEmpty()) {
       helper.add("localStartConflicts", localStartConflicts);
     }
@@ -1,14 +1,13 @@
 package org.learningu.scheduling.logic;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
-import java.util.Map.Entry;
 import java.util.Set;
 
+import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.graph.Room;
-import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.Teacher;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
@@ -21,6 +20,8 @@ import org.learningu.scheduling.schedule.Schedule;
  * 
  */
 public final class TeacherConflictLogic extends ScheduleLogic {
+  private static final String CONDITION =
+      "Teachers must not be assigned to teach more than one class at a time";
 
   @Override
   public
@@ -28,34 +29,35 @@ public final class TeacherConflictLogic extends ScheduleLogic {
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
     Program program = schedule.getProgram();
+    ClassPeriod period = assignment.getPeriod();
+    if (validator.isFailFast()) {
+      // there is no need to find the conflicting assignments, only to know that there are some
+      for (Teacher teacher : program.teachersFor(assignment.getSection())) {
+        if (schedule.isTeaching(teacher, period)) {
+          validator.failGlobal(CONDITION);
+          return;
+        }
+      }
+      return;
+    }
     /*
-     * Collecting the set of all courses taught by the same teachers is more efficient than going
-     * through every teacher who is teaching a class this period.
+     * The schedule indexes what each teacher is teaching in each period, so this takes time
+     * proportional to the number of teachers of the section, no matter how many rooms there are.
      */
-    Set<Teacher> teachers = program.teachersFor(assignment.getSection());
-    Set<Section> coursesTaughtBySame = coursesTaughtByTeachers(program, teachers);
-    Set<PresentAssignment> conflicts = Sets.newLinkedHashSet();
-    for (Entry<Room, PresentAssignment> entry : schedule
-        .occurringAt(assignment.getPeriod())
-        .entrySet()) {
-      PresentAssignment assign = entry.getValue();
-      Section course = assign.getSection();
-      if (coursesTaughtBySame.contains(course)) {
-        conflicts.add(assign);
+    Set<PresentAssignment> conflicts = ImmutableSet.of();
+    for (Teacher teacher : program.teachersFor(assignment.getSection())) {
+      Optional<PresentAssignment> teaching = schedule.teachingAt(teacher, period);
+      if (teaching.isPresent()) {
+        if (conflicts.isEmpty()) {
+          conflicts = Sets.newLinkedHashSet();
+        }
+        conflicts.add(teaching.get());
       }
     }
 
     validator.validateGlobal(
         assignment,
         conflicts,
-        "Teachers must not be assigned to teach more than one class at a time");
-  }
-
-  static Set<Section> coursesTaughtByTeachers(Program program, Iterable<Teacher> teachers) {
-    ImmutableSet.Builder<Section> builder = ImmutableSet.builder();
-    for (Teacher t : teachers) {
-      builder.addAll(program.getSectionsForTeacher(t));
-    }
-    return builder.build();
+        CONDITION);
   }
 }
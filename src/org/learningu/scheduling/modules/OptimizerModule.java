@@ -1,5 +1,7 @@
 package org.learningu.scheduling.modules;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.inject.AbstractModule;
 import com.google.inject.Key;
 import com.google.inject.Provider;
@@ -8,21 +10,35 @@ import com.google.inject.TypeLiteral;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.name.Named;
+import com.google.inject.name.Names;
 
 import java.util.Map;
+import java.util.Random;
 
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
 import org.learningu.scheduling.Pass.OptimizerSpec;
+import org.learningu.scheduling.Pass.ReplicaExchangeSpec;
 import org.learningu.scheduling.Pass.SerialAcceptanceFunction;
 import org.learningu.scheduling.Pass.SerialTemperatureFunction;
+import org.learningu.scheduling.Pass.TabuSearchSpec;
 import org.learningu.scheduling.annotations.SingleThread;
+import org.learningu.scheduling.logic.FeasibilityIndex;
 import org.learningu.scheduling.optimization.AcceptanceFunction;
+import org.learningu.scheduling.optimization.AcceptanceTargetingTemperatureFunction;
 import org.learningu.scheduling.optimization.Annealer;
 import org.learningu.scheduling.optimization.ConcurrentOptimizer;
+import org.learningu.scheduling.optimization.GeometricTemperatureFunction;
+import org.learningu.scheduling.optimization.Journaling;
+import org.learningu.scheduling.optimization.Neighborhood;
 import org.learningu.scheduling.optimization.Optimizer;
 import org.learningu.scheduling.optimization.OptimizerFactory;
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.optimization.ReheatingTemperatureFunction;
+import org.learningu.scheduling.optimization.ReplicaExchangeOptimizer;
 import org.learningu.scheduling.optimization.StandardAcceptanceFunction;
+import org.learningu.scheduling.optimization.TabuSearch;
 import org.learningu.scheduling.optimization.TemperatureFunction;
+import org.learningu.scheduling.optimization.TimedOptimizer;
 import org.learningu.scheduling.perturbers.Perturbers;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.scorers.SerialScorers.CompleteScorer;
@@ -43,26 +59,116 @@ public class OptimizerModule extends AbstractModule {
         TemperatureFunction.class);
     tempBinder.addBinding(SerialTemperatureFunction.LINEAR).toInstance(LINEAR_FUNCTION);
     tempBinder.addBinding(SerialTemperatureFunction.QUADRATIC).toInstance(QUADRATIC_FUNCTION);
+    tempBinder.addBinding(SerialTemperatureFunction.GEOMETRIC).to(
+        GeometricTemperatureFunction.class);
+    tempBinder.addBinding(SerialTemperatureFunction.ACCEPTANCE_TARGETING).to(
+        AcceptanceTargetingTemperatureFunction.class);
+    tempBinder.addBinding(SerialTemperatureFunction.REHEATING).to(
+        ReheatingTemperatureFunction.class);
     install(new FactoryModuleBuilder().implement(
         new TypeLiteral<Optimizer<Schedule>>() {},
         new TypeLiteral<Annealer<Schedule>>() {}).build(
-        Key.get(new TypeLiteral<OptimizerFactory<Schedule>>() {}, SingleThread.class)));
+        Key.get(new TypeLiteral<OptimizerFactory<Schedule>>() {}, Names.named("annealer"))));
     install(new ScorerModule());
   }
 
   @Provides
-  Optimizer<Schedule> optimizer(ConcurrentOptimizer<Schedule> opt) {
+  Optimizer<Schedule> optimizer(TimedOptimizer<Schedule> opt) {
     return opt;
   }
 
+  @Provides
+  TimedOptimizer<Schedule> timedOptimizer(
+      OptimizerSpec spec,
+      Provider<ConcurrentOptimizer<Schedule>> concurrent,
+      Provider<ReplicaExchangeOptimizer<Schedule>> replicaExchange) {
+    switch (spec.getOptimizerImpl()) {
+      case CONCURRENT:
+        return concurrent.get();
+      case REPLICA_EXCHANGE:
+        return replicaExchange.get();
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  @Provides
+  @SingleThread
+  OptimizerFactory<Schedule> singleThreadOptimizerFactory(
+      OptimizerSpec spec,
+      @Named("annealer") OptimizerFactory<Schedule> annealer,
+      final Provider<TabuSearch<Schedule>> tabuSearch) {
+    switch (spec.getSubOptimizerImpl()) {
+      case ANNEALING:
+        return annealer;
+      case TABU_SEARCH:
+        // tabu search never reports its steps, so an adaptive temperature would never adapt
+        checkArgument(
+            !isAdaptive(spec.getPrimaryTempFun()) && !isAdaptive(spec.getSubTempFun()),
+            "Tabu search cannot drive adaptive temperature functions: primary %s, sub %s",
+            spec.getPrimaryTempFun(),
+            spec.getSubTempFun());
+        return new OptimizerFactory<Schedule>() {
+          // tabu search takes the best sampled move whatever the temperature
+          @Override
+          public Optimizer<Schedule> create(TemperatureFunction tempFun) {
+            return tabuSearch.get();
+          }
+        };
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  private static boolean isAdaptive(SerialTemperatureFunction tempFun) {
+    switch (tempFun) {
+      case ACCEPTANCE_TARGETING:
+      case REHEATING:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  @Provides
+  TabuSearchSpec tabuSearchSpec(OptimizerSpec spec) {
+    return spec.getTabuSearch();
+  }
+
+  @Provides
+  Neighborhood<Schedule> neighborhood(
+      TabuSearchSpec spec,
+      FeasibilityIndex feasibility,
+      Random random) {
+    return Perturbers.singleAssignmentNeighborhood(spec.getSampling(), feasibility, random);
+  }
+
+  @Provides
+  AdaptiveTemperatureSpec adaptiveTemperatureSpec(OptimizerSpec spec) {
+    return spec.getAdaptiveTemperature();
+  }
+
+  @Provides
+  ReplicaExchangeSpec replicaExchangeSpec(OptimizerSpec spec) {
+    return spec.getReplicaExchange();
+  }
+
+  @Provides
+  Journaling<Schedule> journaling() {
+    return SCHEDULE_JOURNALING;
+  }
+
   @Provides
   CompleteScorer completeScorer(OptimizerSpec spec) {
     return spec.getScorer();
   }
 
   @Provides
-  Perturber<Schedule> perturber(OptimizerSpec spec) {
-    return Perturbers.deserialize(spec.getPerturber());
+  Perturber<Schedule> perturber(
+      OptimizerSpec spec,
+      FeasibilityIndex feasibility,
+      Random random) {
+    return Perturbers.deserialize(spec.getPerturber(), feasibility, random);
   }
 
   @Provides
@@ -100,6 +206,28 @@ public class OptimizerModule extends AbstractModule {
     return map.get(spec.getSubAcceptFun()).get();
   }
 
+  private static final Journaling<Schedule> SCHEDULE_JOURNALING = new Journaling<Schedule>() {
+    @Override
+    public Schedule mutableCopy(Schedule state) {
+      return state.mutableCopy();
+    }
+
+    @Override
+    public void rollback(Schedule mutableState) {
+      mutableState.rollback();
+    }
+
+    @Override
+    public void commit(Schedule mutableState) {
+      mutableState.commit();
+    }
+
+    @Override
+    public Schedule snapshot(Schedule mutableState) {
+      return mutableState.snapshot();
+    }
+  };
+
   public static final TemperatureFunction LINEAR_FUNCTION = new TemperatureFunction() {
     @Override
     public double temperature(int currentStep, int nSteps) {
@@ -4,13 +4,17 @@ import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.multibindings.MapBinder;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.logic.ChainedScheduleLogic;
 import org.learningu.scheduling.logic.DuplicateSectionLogic;
+import org.learningu.scheduling.logic.FeasibilityIndex;
 import org.learningu.scheduling.logic.GradeRangeLogic;
 import org.learningu.scheduling.logic.LocalConflictLogic;
 import org.learningu.scheduling.logic.PrerequisiteLogic;
@@ -39,11 +43,29 @@ public class ScheduleLogicModule extends AbstractModule {
   }
 
   @Provides
-  ScheduleLogic logic(SerialLogics logics, Map<SerialLogicImpl, Provider<ScheduleLogic>> bindings) {
+  @Singleton
+  ChainedScheduleLogic chainedLogic(
+      SerialLogics logics,
+      Map<SerialLogicImpl, Provider<ScheduleLogic>> bindings) {
     List<ScheduleLogic> theLogics = Lists.newArrayList();
     for (SerialLogicImpl subLogic : logics.getLogicList()) {
       theLogics.add(bindings.get(subLogic).get());
     }
     return ChainedScheduleLogic.create(theLogics);
   }
+
+  @Provides
+  @Singleton
+  FeasibilityIndex feasibilityIndex(
+      Program program,
+      ChainedScheduleLogic logic,
+      ExecutorService service) {
+    return FeasibilityIndex.build(program, logic, service);
+  }
+
+  @Provides
+  @Singleton
+  ScheduleLogic logic(ChainedScheduleLogic logic, FeasibilityIndex feasibility) {
+    return logic.withFeasibilityIndex(feasibility);
+  }
 }
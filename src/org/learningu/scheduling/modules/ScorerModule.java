@@ -1,9 +1,15 @@
 package org.learningu.scheduling.modules;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.PeekingIterator;
@@ -12,9 +18,13 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Course;
@@ -23,6 +33,7 @@ import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.Subject;
 import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.optimization.IncrementalScorer;
 import org.learningu.scheduling.optimization.Scorer;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
@@ -48,6 +59,41 @@ public final class ScorerModule extends AbstractModule {
         }
         accum.add(teachers.size());
       }
+
+      @Override
+      ComponentState track(final Program program, final double exponent, final double scale) {
+        return new ComponentState() {
+          private final int[] sectionsTaught = new int[program.getTeachers().size()];
+          private int teachersScheduled = 0;
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            for (Teacher teacher : program.teachersFor(assign.getSection())) {
+              int ordinal = teacher.getOrdinal();
+              if (added) {
+                if (sectionsTaught[ordinal]++ == 0) {
+                  teachersScheduled++;
+                }
+              } else if (--sectionsTaught[ordinal] == 0) {
+                teachersScheduled--;
+              }
+            }
+          }
+
+          @Override
+          void reset() {
+            Arrays.fill(sectionsTaught, 0);
+            teachersScheduled = 0;
+          }
+
+          @Override
+          double getTotal() {
+            ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+            accum.add(teachersScheduled);
+            return accum.getTotal();
+          }
+        };
+      }
     },
     DISTINCT_COURSES_SCHEDULED {
       @Override
@@ -59,6 +105,34 @@ public final class ScorerModule extends AbstractModule {
         }
         accum.add(courses.size());
       }
+
+      @Override
+      ComponentState track(Program program, final double exponent, final double scale) {
+        return new ComponentState() {
+          private final Multiset<Course> sectionsScheduled = HashMultiset.create();
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            if (added) {
+              sectionsScheduled.add(assign.getCourse());
+            } else {
+              sectionsScheduled.remove(assign.getCourse());
+            }
+          }
+
+          @Override
+          void reset() {
+            sectionsScheduled.clear();
+          }
+
+          @Override
+          double getTotal() {
+            ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+            accum.add(sectionsScheduled.elementSet().size());
+            return accum.getTotal();
+          }
+        };
+      }
     },
     SECTIONS_SCHEDULED {
 
@@ -66,6 +140,30 @@ public final class ScorerModule extends AbstractModule {
       void score(Schedule schedule, ScoreAccumulator accum) {
         accum.add(schedule.getScheduledSections().size());
       }
+
+      @Override
+      ComponentState track(Program program, final double exponent, final double scale) {
+        return new ComponentState() {
+          private int sectionsScheduled = 0;
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            sectionsScheduled += added ? 1 : -1;
+          }
+
+          @Override
+          void reset() {
+            sectionsScheduled = 0;
+          }
+
+          @Override
+          double getTotal() {
+            ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+            accum.add(sectionsScheduled);
+            return accum.getTotal();
+          }
+        };
+      }
     },
     CLASS_HOURS_SCHEDULED {
       @Override
@@ -74,6 +172,27 @@ public final class ScorerModule extends AbstractModule {
           accum.add(s.getPeriodLength());
         }
       }
+
+      @Override
+      ComponentState track(Program program, double exponent, double scale) {
+        final ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+        return new ComponentState() {
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            accum.addOrSubtract(added, assign.getSection().getPeriodLength());
+          }
+
+          @Override
+          void reset() {
+            accum.reset();
+          }
+
+          @Override
+          double getTotal() {
+            return accum.getTotal();
+          }
+        };
+      }
     },
     STUDENT_CLASS_HOURS_SCHEDULED {
       @Override
@@ -82,6 +201,28 @@ public final class ScorerModule extends AbstractModule {
           accum.add(s.getPeriodLength() * s.getEstimatedClassSize());
         }
       }
+
+      @Override
+      ComponentState track(Program program, double exponent, double scale) {
+        final ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+        return new ComponentState() {
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            Section s = assign.getSection();
+            accum.addOrSubtract(added, s.getPeriodLength() * s.getEstimatedClassSize());
+          }
+
+          @Override
+          void reset() {
+            accum.reset();
+          }
+
+          @Override
+          double getTotal() {
+            return accum.getTotal();
+          }
+        };
+      }
     },
     BACK_TO_BACK_CLASSES {
       @Override
@@ -122,6 +263,73 @@ public final class ScorerModule extends AbstractModule {
         return start2.getTimeBlock().equals(start1.getTimeBlock())
             && start2.getIndex() == start1.getIndex() + length1;
       }
+
+      /*
+       * Rather than sorting each teacher's assignments, we keep the assignment each teacher starts
+       * in each period, and look for the neighbors of each added or removed assignment directly.
+       * In schedules without teacher conflicts, neighbors in period order are back to back exactly
+       * when one starts in the period the other ends.
+       */
+      @Override
+      ComponentState track(final Program program, final double exponent, final double scale) {
+        return new ComponentState() {
+          private final StartAssignment[][] starts = new StartAssignment[program
+              .getTeachers()
+              .size()][program.getPeriods().size()];
+          private int backToBackPairs = 0;
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            int ordinal = assign.getPeriod().getOrdinal();
+            for (Teacher teacher : program.teachersFor(assign.getSection())) {
+              StartAssignment[] teacherStarts = starts[teacher.getOrdinal()];
+              if (added) {
+                teacherStarts[ordinal] = assign;
+                backToBackPairs += roomChangesAround(teacherStarts, assign);
+              } else if (assign.equals(teacherStarts[ordinal])) {
+                backToBackPairs -= roomChangesAround(teacherStarts, assign);
+                teacherStarts[ordinal] = null;
+              }
+            }
+          }
+
+          private int roomChangesAround(StartAssignment[] teacherStarts, StartAssignment assign) {
+            List<ClassPeriod> periods = assign.getTimeBlock().getPeriods();
+            int start = assign.getPeriod().getIndex();
+            int changes = 0;
+            for (int i = 0; i < start; i++) {
+              StartAssignment prev = teacherStarts[periods.get(i).getOrdinal()];
+              if (prev != null && backToBack(prev, assign)
+                  && !prev.getRoom().equals(assign.getRoom())) {
+                changes++;
+              }
+            }
+            int end = start + assign.getCourse().getPeriodLength();
+            if (end < periods.size()) {
+              StartAssignment next = teacherStarts[periods.get(end).getOrdinal()];
+              if (next != null && !next.getRoom().equals(assign.getRoom())) {
+                changes++;
+              }
+            }
+            return changes;
+          }
+
+          @Override
+          void reset() {
+            for (StartAssignment[] teacherStarts : starts) {
+              Arrays.fill(teacherStarts, null);
+            }
+            backToBackPairs = 0;
+          }
+
+          @Override
+          double getTotal() {
+            ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+            accum.subtract(1.0, backToBackPairs);
+            return accum.getTotal();
+          }
+        };
+      }
     },
     GLOBAL_ATTENDANCE_LEVELS {
       @Override
@@ -141,6 +349,30 @@ public final class ScorerModule extends AbstractModule {
           }
         }
       }
+
+      @Override
+      ComponentState track(final Program program, final double exponent, final double scale) {
+        return new ComponentState() {
+          private final AttendanceLevels levels = new AttendanceLevels(program);
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            levels.update(assign, added);
+          }
+
+          @Override
+          void reset() {
+            levels.reset();
+          }
+
+          @Override
+          double getTotal() {
+            ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+            levels.score(accum);
+            return accum.getTotal();
+          }
+        };
+      }
     },
     SUBJECT_ATTENDANCE_LEVELS {
       @Override
@@ -168,6 +400,56 @@ public final class ScorerModule extends AbstractModule {
           }
         }
       }
+
+      /*
+       * Only the subjects touched since the last evaluation need to be rescored.
+       */
+      @Override
+      ComponentState track(final Program program, final double exponent, final double scale) {
+        final int subjectCount = program.getSubjects().size();
+        return new ComponentState() {
+          private final AttendanceLevels[] levels = new AttendanceLevels[subjectCount];
+          private final double[] subjectTotals = new double[subjectCount];
+          private final boolean[] dirty = new boolean[subjectCount];
+
+          {
+            for (int i = 0; i < subjectCount; i++) {
+              levels[i] = new AttendanceLevels(program);
+            }
+          }
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            int subject = assign.getSection().getSubject().getOrdinal();
+            levels[subject].update(assign, added);
+            dirty[subject] = true;
+          }
+
+          @Override
+          void reset() {
+            for (int i = 0; i < subjectCount; i++) {
+              levels[i].reset();
+            }
+            Arrays.fill(subjectTotals, 0.0);
+            Arrays.fill(dirty, false);
+          }
+
+          @Override
+          double getTotal() {
+            double total = 0;
+            for (int i = 0; i < subjectCount; i++) {
+              if (dirty[i]) {
+                ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+                levels[i].score(accum);
+                subjectTotals[i] = accum.getTotal();
+                dirty[i] = false;
+              }
+              total += subjectTotals[i];
+            }
+            return total;
+          }
+        };
+      }
     },
     UNUSED_ROOMS {
       @Override
@@ -179,12 +461,120 @@ public final class ScorerModule extends AbstractModule {
           }
         }
       }
+
+      @Override
+      ComponentState track(Program program, final double exponent, final double scale) {
+        final int[] startsInRoom = new int[program.getRooms().size()];
+        return new ComponentState() {
+          private int unusedRooms = startsInRoom.length;
+
+          @Override
+          void update(StartAssignment assign, boolean added) {
+            int ordinal = assign.getRoom().getOrdinal();
+            if (added) {
+              if (startsInRoom[ordinal]++ == 0) {
+                unusedRooms--;
+              }
+            } else if (--startsInRoom[ordinal] == 0) {
+              unusedRooms++;
+            }
+          }
+
+          @Override
+          void reset() {
+            Arrays.fill(startsInRoom, 0);
+            unusedRooms = startsInRoom.length;
+          }
+
+          @Override
+          double getTotal() {
+            ScoreAccumulator accum = new ScoreAccumulator(exponent, scale);
+            accum.add(1, unusedRooms);
+            return accum.getTotal();
+          }
+        };
+      }
     };
     abstract void score(Schedule schedule, ScoreAccumulator accum);
+
+    /**
+     * Returns a new, empty incremental state for this component, for schedules of the specified
+     * program.
+     */
+    abstract ComponentState track(Program program, double exponent, double scale);
+  }
+
+  /**
+   * The incremental state of a single scorer component, following the assignments of one mutable
+   * schedule. {@link #getTotal()} must always agree with a full {@link ScorerImpl#score} of a
+   * schedule containing exactly the assignments added and not since removed.
+   */
+  abstract static class ComponentState {
+    abstract void update(StartAssignment assign, boolean added);
+
+    /**
+     * Forgets every assignment, so that the state may be reused for another schedule of the same
+     * program.
+     */
+    abstract void reset();
+
+    abstract double getTotal();
+  }
+
+  /**
+   * The total maximum class size of the sections present in each period, for the incremental
+   * attendance level components.
+   */
+  private static final class AttendanceLevels {
+    private final Program program;
+    private final int[] levels;
+    private int totalAttendance = 0;
+
+    AttendanceLevels(Program program) {
+      this.program = program;
+      this.levels = new int[program.getPeriods().size()];
+    }
+
+    void update(StartAssignment assign, boolean added) {
+      int size = added ? assign.getSection().getMaxClassSize() : -assign
+          .getSection()
+          .getMaxClassSize();
+      for (ClassPeriod period : assign.getPresentPeriods()) {
+        levels[period.getOrdinal()] += size;
+        totalAttendance += size;
+      }
+    }
+
+    void reset() {
+      Arrays.fill(levels, 0);
+      totalAttendance = 0;
+    }
+
+    void score(ScoreAccumulator accum) {
+      for (ClassPeriod period : program.getPeriods()) {
+        int actualAttendance = levels[period.getOrdinal()];
+        double expectedAttendance = program.getAttendanceRatio(period) * totalAttendance;
+        if (expectedAttendance != 0.0) {
+          double ratio = actualAttendance / expectedAttendance;
+          accum.subtract(Math.abs(ratio - 1.0));
+        }
+      }
+    }
   }
 
   static final class ScoreAccumulator {
+    /*
+     * Exponents with cheaper equivalents than Math.pow, which is by far the most expensive part of
+     * accumulating a score.
+     */
+    private static final int GENERAL_POWER = 0;
+    private static final int IDENTITY = 1;
+    private static final int SQUARE = 2;
+    private static final int CUBE = 3;
+    private static final int SQUARE_ROOT = 4;
+
     private final double exponent;
+    private final int power;
     private final double scale;
     private double accum;
 
@@ -192,6 +582,32 @@ public final class ScorerModule extends AbstractModule {
       this.exponent = exponent;
       this.scale = scale;
       this.accum = 0.0;
+      if (exponent == 1.0) {
+        power = IDENTITY;
+      } else if (exponent == 2.0) {
+        power = SQUARE;
+      } else if (exponent == 3.0) {
+        power = CUBE;
+      } else if (exponent == 0.5) {
+        power = SQUARE_ROOT;
+      } else {
+        power = GENERAL_POWER;
+      }
+    }
+
+    private double pow(double score) {
+      switch (power) {
+        case IDENTITY:
+          return score;
+        case SQUARE:
+          return score * score;
+        case CUBE:
+          return score * score * score;
+        case SQUARE_ROOT:
+          return Math.sqrt(score);
+        default:
+          return Math.pow(score, exponent);
+      }
     }
 
     public double getTotal() {
@@ -199,50 +615,242 @@ public final class ScorerModule extends AbstractModule {
     }
 
     public void add(double score) {
-      accum += Math.pow(score, exponent);
+      accum += pow(score);
     }
 
     public void subtract(double score) {
-      accum -= Math.pow(score, exponent);
+      accum -= pow(score);
+    }
+
+    public void add(double score, int times) {
+      accum += times * pow(score);
+    }
+
+    public void subtract(double score, int times) {
+      accum -= times * pow(score);
+    }
+
+    public void addOrSubtract(boolean add, double score) {
+      if (add) {
+        add(score);
+      } else {
+        subtract(score);
+      }
+    }
+
+    void reset() {
+      accum = 0.0;
     }
   }
 
   @Provides
   @Singleton
-  Scorer<Schedule> deserialize(CompleteScorer serial) {
-    ImmutableList.Builder<Scorer<Schedule>> componentsBuilder = ImmutableList.builder();
+  IncrementalScorer<Schedule> deserialize(CompleteScorer serial) {
+    ImmutableList.Builder<ScaledComponent> componentsBuilder = ImmutableList.builder();
     for (ScaledScorer scaled : serial.getComponentList()) {
       componentsBuilder.add(deserialize(scaled));
     }
-    final ImmutableList<Scorer<Schedule>> components = componentsBuilder.build();
-    return new Scorer<Schedule>() {
-      @Override
-      public double score(Schedule input) {
-        double total = 0;
-        for (Scorer<Schedule> scorer : components) {
-          total += scorer.score(input);
+    return new CompleteScheduleScorer(componentsBuilder.build());
+  }
+
+  @Provides
+  Scorer<Schedule> scorer(IncrementalScorer<Schedule> scorer) {
+    return scorer;
+  }
+
+  private ScaledComponent deserialize(ScaledScorer scorer) {
+    return new ScaledComponent(
+        deserialize(scorer.getImpl()),
+        scorer.getExponent(),
+        scorer.getMultiplier());
+  }
+
+  private static final class ScaledComponent implements Scorer<Schedule> {
+    private final ScorerImpl impl;
+    private final double exponent;
+    private final double multiplier;
+
+    ScaledComponent(ScorerImpl impl, double exponent, double multiplier) {
+      this.impl = impl;
+      this.exponent = exponent;
+      this.multiplier = multiplier;
+    }
+
+    @Override
+    public double score(Schedule input) {
+      ScoreAccumulator accum = new ScoreAccumulator(exponent, multiplier);
+      impl.score(input, accum);
+      return accum.getTotal();
+    }
+
+    ComponentState track(Program program) {
+      return impl.track(program, exponent, multiplier);
+    }
+  }
+
+  private static final class CompleteScheduleScorer implements IncrementalScorer<Schedule> {
+    private final ImmutableList<ScaledComponent> components;
+
+    /*
+     * Persistent schedules never change, so their scores can be remembered for as long as they
+     * live. The keys are weak and compared by identity.
+     */
+    private final ConcurrentMap<Schedule, Double> scoreCache = new MapMaker()
+        .weakKeys()
+        .makeMap();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private final ThreadLocal<FusedStates> fusedStates = new ThreadLocal<FusedStates>();
+
+    CompleteScheduleScorer(ImmutableList<ScaledComponent> components) {
+      this.components = components;
+    }
+
+    @Override
+    public double score(Schedule input) {
+      if (input.isMutable()) {
+        return scoreFused(input);
+      }
+      Double cached = scoreCache.get(input);
+      if (cached != null) {
+        cacheHits.incrementAndGet();
+        return cached;
+      }
+      cacheMisses.incrementAndGet();
+      double score = scoreFused(input);
+      scoreCache.put(input, score);
+      return score;
+    }
+
+    /**
+     * Scores the schedule in a single pass over its assignments, feeding every component at once
+     * from its primitive counters, rather than letting each component traverse the schedule on
+     * its own. Each thread resets and reuses the same component states, rather than allocating
+     * them for every schedule.
+     */
+    private double scoreFused(Schedule input) {
+      Program program = input.getProgram();
+      FusedStates fused = fusedStates.get();
+      if (fused == null || fused.program != program) {
+        fused = new FusedStates(program, newStates(program));
+        fusedStates.set(fused);
+      } else {
+        for (int i = 0; i < fused.states.size(); i++) {
+          fused.states.get(i).reset();
         }
-        return total;
       }
-    };
+      for (StartAssignment assign : input.getStartAssignments()) {
+        apply(fused.states, assign, true);
+      }
+      return total(fused.states);
+    }
+
+    @Override
+    public Tracker track(Schedule mutableState) {
+      checkArgument(mutableState.isMutable(), "Only mutable schedules can be tracked");
+      checkArgument(
+          mutableState.changesSince(0).isEmpty(),
+          "Schedule has uncommitted modifications");
+      return new ScheduleTracker(mutableState, newStates(mutableState.getProgram()));
+    }
+
+    @Override
+    public String toString() {
+      return Objects
+          .toStringHelper(this)
+          .add("components", components.size())
+          .add("cacheHits", cacheHits)
+          .add("cacheMisses", cacheMisses)
+          .toString();
+    }
+
+    private ImmutableList<ComponentState> newStates(Program program) {
+      ImmutableList.Builder<ComponentState> statesBuilder = ImmutableList.builder();
+      for (ScaledComponent component : components) {
+        statesBuilder.add(component.track(program));
+      }
+      return statesBuilder.build();
+    }
   }
 
-  private Scorer<Schedule> deserialize(ScaledScorer scorer) {
-    final double multiplier = scorer.getMultiplier();
-    final double exponent = scorer.getExponent();
-    final ScorerImpl impl = deserialize(scorer.getImpl());
-    return new Scorer<Schedule>() {
+  private static final class FusedStates {
+    private final Program program;
+    private final ImmutableList<ComponentState> states;
 
-      @Override
-      public double score(Schedule input) {
-        ScoreAccumulator accum = new ScoreAccumulator(exponent, multiplier);
-        impl.score(input, accum);
-        return accum.getTotal();
+    FusedStates(Program program, ImmutableList<ComponentState> states) {
+      this.program = program;
+      this.states = states;
+    }
+  }
+
+  private static void apply(List<ComponentState> states, StartAssignment assign, boolean added) {
+    for (int i = 0; i < states.size(); i++) {
+      states.get(i).update(assign, added);
+    }
+  }
+
+  private static double total(List<ComponentState> states) {
+    double total = 0;
+    for (int i = 0; i < states.size(); i++) {
+      total += states.get(i).getTotal();
+    }
+    return total;
+  }
+
+  /**
+   * Tracks the score of a mutable schedule. The tracker's position in the schedule's journal is
+   * the number of changes it has scored since the last commit.
+   */
+  private static final class ScheduleTracker implements IncrementalScorer.Tracker {
+    private final Schedule schedule;
+    private final ImmutableList<ComponentState> states;
+    private final List<Schedule.Change> uncommitted = Lists.newArrayList();
+    private double score;
+
+    ScheduleTracker(Schedule schedule, ImmutableList<ComponentState> states) {
+      this.schedule = schedule;
+      this.states = states;
+      for (StartAssignment assign : schedule.getStartAssignments()) {
+        apply(states, assign, true);
       }
-    };
+      this.score = total(states);
+    }
+
+    @Override
+    public double getScore() {
+      return score;
+    }
+
+    @Override
+    public double update() {
+      for (Schedule.Change change : schedule.changesSince(uncommitted.size())) {
+        apply(states, change.getAssignment(), change.isAddition());
+        uncommitted.add(change);
+      }
+      score = total(states);
+      return score;
+    }
+
+    @Override
+    public void commit() {
+      uncommitted.clear();
+    }
+
+    @Override
+    public void rollback() {
+      for (Schedule.Change change : Lists.reverse(uncommitted)) {
+        apply(states, change.getAssignment(), !change.isAddition());
+      }
+      uncommitted.clear();
+      score = total(states);
+    }
   }
 
-  private ScorerImpl deserialize(SerialScorerImpl impl) {
+  @VisibleForTesting
+  ScorerImpl deserialize(SerialScorerImpl impl) {
     switch (impl) {
       case CLASS_HOURS_SCHEDULED:
         return ScorerImpl.CLASS_HOURS_SCHEDULED;
@@ -0,0 +1,80 @@
+package org.learningu.scheduling.optimization;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.inject.Inject;
+
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
+
+/**
+ * A temperature function that steers the temperature so that the fraction of candidates accepted
+ * follows a target, instead of fixing the temperature in advance. The target starts at the
+ * configured acceptance ratio and falls linearly to zero, so the optimizer explores early and
+ * settles late at whatever temperatures the scores of this particular problem call for.
+ * 
+ * <p>
+ * The acceptance ratio is measured as a moving average over the acceptance window; after every
+ * step the temperature is raised or lowered by the adjustment rate, within the configured range.
+ * 
+ * @author lowasser
+ */
+public final class AcceptanceTargetingTemperatureFunction implements AdaptiveTemperatureFunction {
+  private final double initialTemperature;
+
+  private final double finalTemperature;
+
+  private final double targetAcceptanceRatio;
+
+  private final double smoothing;
+
+  private final double adjustment;
+
+  private double temperature;
+
+  private double target;
+
+  private double acceptanceRatio;
+
+  @Inject
+  AcceptanceTargetingTemperatureFunction(AdaptiveTemperatureSpec spec) {
+    checkArgument(
+        0 < spec.getFinalTemperature()
+            && spec.getFinalTemperature() <= spec.getInitialTemperature(),
+        "Invalid temperature range [%s, %s]",
+        spec.getFinalTemperature(),
+        spec.getInitialTemperature());
+    checkArgument(
+        0 <= spec.getTargetAcceptanceRatio() && spec.getTargetAcceptanceRatio() <= 1,
+        "Invalid acceptance ratio %s",
+        spec.getTargetAcceptanceRatio());
+    checkArgument(spec.getAcceptanceWindow() > 0, "Acceptance window must be positive");
+    checkArgument(spec.getAdjustmentRate() > 0, "Adjustment rate must be positive");
+    this.initialTemperature = spec.getInitialTemperature();
+    this.finalTemperature = spec.getFinalTemperature();
+    this.targetAcceptanceRatio = spec.getTargetAcceptanceRatio();
+    this.smoothing = 1.0 / spec.getAcceptanceWindow();
+    this.adjustment = 1 + spec.getAdjustmentRate();
+    this.temperature = initialTemperature;
+    this.target = targetAcceptanceRatio;
+    // assume we start on target, so the first few steps do not swing the temperature
+    this.acceptanceRatio = targetAcceptanceRatio;
+  }
+
+  @Override
+  public double temperature(int currentStep, int nSteps) {
+    target = (currentStep >= nSteps)
+        ? 0.0
+        : targetAcceptanceRatio * (nSteps - currentStep) / nSteps;
+    return temperature;
+  }
+
+  @Override
+  public void observe(boolean accepted, double currentScore, double bestScore) {
+    acceptanceRatio += ((accepted ? 1.0 : 0.0) - acceptanceRatio) * smoothing;
+    if (acceptanceRatio < target) {
+      temperature = Math.min(initialTemperature, temperature * adjustment);
+    } else {
+      temperature = Math.max(finalTemperature, temperature / adjustment);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * A temperature function that adapts to how the optimization is going. Optimizers report the
+ * outcome of every step they take to it, so each optimizer needs an instance of its own.
+ * 
+ * @author lowasser
+ */
+public interface AdaptiveTemperatureFunction extends TemperatureFunction {
+  /**
+   * Reports the outcome of a step taken at the temperature this function last returned: whether
+   * the candidate state was accepted, and the current and best scores after the step.
+   */
+  void observe(boolean accepted, double currentScore, double bestScore);
+}
@@ -1,6 +1,7 @@
 package org.learningu.scheduling.optimization;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.base.Stopwatch;
 import com.google.inject.Inject;
@@ -9,27 +10,55 @@ import com.google.inject.assistedinject.Assisted;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.Duration;
 import org.learningu.scheduling.flags.Converters;
+import org.learningu.scheduling.flags.Flag;
 
 /**
  * An optimizer implementation based on simulated annealing techniques.
  * 
  * @author lowasser
  */
-public final class Annealer<T> implements Optimizer<T> {
+public final class Annealer<T> implements InstrumentedOptimizer<T> {
   private final Perturber<T> perturber;
 
   private final Scorer<T> scorer;
 
   private final TemperatureFunction tempFun;
 
+  @Nullable
+  private final AdaptiveTemperatureFunction adaptiveTempFun;
+
   private final AcceptanceFunction acceptFun;
 
   private final Logger logger;
 
   private final Stopwatch stopwatch;
 
+  @Inject(optional = true)
+  private Journaling<T> journaling = null;
+
+  @Nullable
+  private PassStatistics lastPass = null;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "inPlaceAnnealing",
+      description = "Whether to perturb a single mutable state in place, rolling back rejected "
+          + "candidates, instead of creating a new state for every candidate",
+      optional = true)
+  private boolean inPlace = false;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "fullRescoring",
+      description = "When annealing in place, whether to rescore the whole state on every step "
+          + "even if the scorer can update the score from each modification",
+      optional = true)
+  private boolean fullRescoring = false;
+
   @Inject
   Annealer(
       Perturber<T> perturber,
@@ -41,6 +70,9 @@ public final class Annealer<T> implements Optimizer<T> {
     this.perturber = checkNotNull(perturber);
     this.scorer = checkNotNull(scorer);
     this.tempFun = checkNotNull(tempFun);
+    this.adaptiveTempFun = (tempFun instanceof AdaptiveTemperatureFunction)
+        ? (AdaptiveTemperatureFunction) tempFun
+        : null;
     this.acceptFun = checkNotNull(acceptFun);
     this.logger = logger;
     this.stopwatch = stopwatch;
@@ -51,17 +83,49 @@ public final class Annealer<T> implements Optimizer<T> {
     return scorer;
   }
 
+  @Override
+  public PassStatistics getLastPassStatistics() {
+    return lastPass;
+  }
+
   @Override
   public T iterate(int steps, T initial) {
+    return iterateScored(steps, Scored.of(initial, scorer.score(initial))).getState();
+  }
+
+  @Override
+  public Scored<T> iterateScored(int steps, Scored<T> initial) {
     stopwatch.start();
-    T current = initial;
-    double currentScore = scorer.score(current);
+    Scored<T> best = (inPlace && journaling != null)
+        ? iterateInPlace(steps, initial)
+        : iterateFunctionally(steps, initial);
+    stopwatch.stop();
+    logger.log(
+        Level.FINE,
+        "Single-threaded annealing step took {0}",
+        Duration
+            .millis(stopwatch.elapsedMillis())
+            .toPeriod()
+            .toString(Converters.PERIOD_FORMATTER));
+    return best;
+  }
+
+  private Scored<T> iterateFunctionally(int steps, Scored<T> initial) {
+    long startNanos = System.nanoTime();
+    long accepted = 0;
+    double startTemperature = 0.0;
+    T current = initial.getState();
+    double currentScore = initial.getScore();
     T best = current;
     double bestScore = currentScore;
     logger.log(Level.FINE, "Annealing for {0} steps; initial score is {1}", new Object[] { steps,
         currentScore });
-    for (int i = 0; i < steps; i++) {
+    int i;
+    for (i = 0; i < steps && !interrupted(i); i++) {
       double temp = tempFun.temperature(i, steps);
+      if (i == 0) {
+        startTemperature = temp;
+      }
       logger.log(
           Level.FINE,
           "On step {0}; temperature is {1}; best current score is {2}",
@@ -69,8 +133,10 @@ public final class Annealer<T> implements Optimizer<T> {
       T next = perturber.perturb(current, temp);
       double nextScore = scorer.score(next);
       logger.log(Level.FINER, "Score of new candidate is {0}", nextScore);
-      if (acceptFun.acceptNewState(currentScore, nextScore, temp)) {
+      boolean accept = acceptFun.acceptNewState(currentScore, nextScore, temp);
+      if (accept) {
         logger.finer("Accepted new candidate");
+        accepted++;
         current = next;
         currentScore = nextScore;
       } else {
@@ -80,15 +146,101 @@ public final class Annealer<T> implements Optimizer<T> {
         best = next;
         bestScore = nextScore;
       }
+      if (adaptiveTempFun != null) {
+        adaptiveTempFun.observe(accept, currentScore, bestScore);
+      }
     }
-    stopwatch.stop();
-    logger.log(
-        Level.FINE,
-        "Single-threaded annealing step took {0}",
-        Duration
-            .millis(stopwatch.elapsedMillis())
-            .toPeriod()
-            .toString(Converters.PERIOD_FORMATTER));
-    return best;
+    lastPass = PassStatistics.of(
+        i,
+        accepted,
+        System.nanoTime() - startNanos,
+        currentScore,
+        startTemperature);
+    return Scored.of(best, bestScore);
+  }
+
+  /*
+   * Perturbs a single mutable state, rolling back rejected candidates, and only takes a snapshot
+   * when a new best is found.
+   */
+  private Scored<T> iterateInPlace(int steps, Scored<T> initial) {
+    long startNanos = System.nanoTime();
+    long accepted = 0;
+    double startTemperature = 0.0;
+    T current = journaling.mutableCopy(initial.getState());
+    IncrementalScorer.Tracker tracker = track(current);
+    double currentScore = initial.getScore();
+    T best = initial.getState();
+    double bestScore = currentScore;
+    logger.log(Level.FINE, "Annealing in place for {0} steps; initial score is {1}", new Object[] {
+        steps, currentScore });
+    int i;
+    for (i = 0; i < steps && !interrupted(i); i++) {
+      double temp = tempFun.temperature(i, steps);
+      if (i == 0) {
+        startTemperature = temp;
+      }
+      logger.log(
+          Level.FINE,
+          "On step {0}; temperature is {1}; best current score is {2}",
+          new Object[] { i, temp, currentScore });
+      T next = perturber.perturb(current, temp);
+      checkState(next == current, "Perturber %s did not modify the state in place", perturber);
+      double nextScore = (tracker == null) ? scorer.score(current) : tracker.update();
+      logger.log(Level.FINER, "Score of new candidate is {0}", nextScore);
+      if (nextScore > bestScore) {
+        best = journaling.snapshot(current);
+        bestScore = nextScore;
+      }
+      boolean accept = acceptFun.acceptNewState(currentScore, nextScore, temp);
+      if (accept) {
+        logger.finer("Accepted new candidate");
+        accepted++;
+        journaling.commit(current);
+        if (tracker != null) {
+          tracker.commit();
+        }
+        currentScore = nextScore;
+      } else {
+        logger.finer("Rejected new candidate");
+        journaling.rollback(current);
+        if (tracker != null) {
+          tracker.rollback();
+        }
+      }
+      if (adaptiveTempFun != null) {
+        adaptiveTempFun.observe(accept, currentScore, bestScore);
+      }
+    }
+    lastPass = PassStatistics.of(
+        i,
+        accepted,
+        System.nanoTime() - startNanos,
+        currentScore,
+        startTemperature);
+    return Scored.of(best, bestScore);
+  }
+
+  /*
+   * A pass that has been cancelled, such as one that overran ConcurrentOptimizer's iteration
+   * timeout, stops at the next step and returns the best state it has found so far, rather than
+   * holding on to its thread and its worker's temperature functions.
+   */
+  private boolean interrupted(int step) {
+    if (Thread.currentThread().isInterrupted()) {
+      logger.log(Level.FINE, "Annealing interrupted after {0} steps", step);
+      return true;
+    }
+    return false;
+  }
+
+  @Nullable
+  private IncrementalScorer.Tracker track(T mutableState) {
+    if (!fullRescoring && scorer instanceof IncrementalScorer) {
+      @SuppressWarnings("unchecked")
+      IncrementalScorer<T> incrementalScorer = (IncrementalScorer<T>) scorer;
+      return incrementalScorer.track(mutableState);
+    }
+    return null;
   }
 }
\ No newline at end of file
@@ -1,20 +1,24 @@
 package org.learningu.scheduling.optimization;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
-import com.google.common.io.Files;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.name.Named;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,9 +26,9 @@ import org.joda.time.Duration;
 import org.learningu.scheduling.annotations.SingleThread;
 import org.learningu.scheduling.flags.Converters;
 import org.learningu.scheduling.flags.Flag;
-import org.learningu.scheduling.pretty.Csv;
+import org.learningu.scheduling.util.RandomStreams;
 
-public final class ConcurrentOptimizer<T> implements Optimizer<T> {
+public final class ConcurrentOptimizer<T> implements TimedOptimizer<T> {
   private final Scorer<T> scorer;
 
   private final OptimizerFactory<T> optimizerFactory;
@@ -46,21 +50,55 @@ public final class ConcurrentOptimizer<T> implements Optimizer<T> {
       optional = true)
   private Duration iterTimeout = Duration.standardSeconds(10);
 
+  @Inject(optional = true)
+  @Flag(
+      name = "islandModel",
+      description = "Whether to run sub-optimizers continuously as independent islands sharing "
+          + "their best state, instead of in rounds that wait for every sub-optimizer",
+      optional = true)
+  private boolean islandModel = false;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "migrationPolicy",
+      description = "When islands adopt the best state found by any island: NONE, IF_BETTER, or "
+          + "ALWAYS",
+      optional = true)
+  private MigrationPolicy migrationPolicy = MigrationPolicy.IF_BETTER;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "migrationInterval",
+      description = "The number of sub-optimizer passes each island runs between migrations",
+      optional = true)
+  private int migrationInterval = 1;
+
+  @Inject(optional = true)
+  private ProgressListener<T> progressListener = null;
+
+  @Inject(optional = true)
+  private TelemetrySink telemetry = null;
+
+  private static final long ISLAND_REPORT_MILLIS = 1000;
+
   private final Logger logger;
 
-  private final TemperatureFunction primaryTempFun;
+  private final Provider<TemperatureFunction> primaryTempFun;
+
+  private final Provider<TemperatureFunction> subTempFun;
 
-  private final TemperatureFunction subTempFun;
+  private final RandomStreams streams;
 
   @Inject
   ConcurrentOptimizer(
       Scorer<T> scorer,
       @SingleThread OptimizerFactory<T> optimizerProvider,
-      @Named("primaryTempFun") TemperatureFunction primaryTempFun,
-      @Named("subTempFun") TemperatureFunction subTempFun,
+      @Named("primaryTempFun") Provider<TemperatureFunction> primaryTempFun,
+      @Named("subTempFun") Provider<TemperatureFunction> subTempFun,
       @Named("nSubOptimizers") int nSubOptimizers,
       ExecutorService service,
       @Named("subOptimizerSteps") int subOptimizerSteps,
+      RandomStreams streams,
       Logger logger) {
     this.scorer = scorer;
     this.optimizerFactory = optimizerProvider;
@@ -70,6 +108,7 @@ public final class ConcurrentOptimizer<T> implements Optimizer<T> {
     this.logger = logger;
     this.primaryTempFun = primaryTempFun;
     this.subTempFun = subTempFun;
+    this.streams = streams;
   }
 
   @Override
@@ -79,34 +118,32 @@ public final class ConcurrentOptimizer<T> implements Optimizer<T> {
 
   @Override
   public T iterate(int steps, T initial) {
-    long timeoutMillis = iterTimeout.getMillis();
-    T currentBest = initial;
-    double currentBestScore = scorer.score(initial);
+    return iterateScored(steps, Scored.of(initial, scorer.score(initial))).getState();
+  }
+
+  @Override
+  public Scored<T> iterateScored(int steps, Scored<T> initial) {
+    long start = System.currentTimeMillis();
+    List<Cooling> cooling = startCooling();
+    Scored<T> currentBest = initial;
     for (int step = 0; step < steps; step++) {
       logger.log(Level.INFO, "On iteration step {0}, current best has score {1}", new Object[] {
-          step, currentBestScore });
-      List<Callable<T>> independentThreads = Lists.newArrayListWithCapacity(nSubOptimizers);
-      double temp = primaryTempFun.temperature(step, steps);
+          step, currentBest.getScore() });
+      List<Callable<Scored<T>>> independentThreads = Lists
+          .newArrayListWithCapacity(nSubOptimizers);
       for (int i = 0; i < nSubOptimizers; i++) {
-        independentThreads.add(runSingleThreadPass(currentBest, temp));
+        independentThreads.add(runSingleThreadPass(
+            currentBest,
+            cooling.get(i),
+            step,
+            steps,
+            streams.split(),
+            start,
+            i,
+            currentBest.getScore()));
       }
       try {
-        List<Future<T>> futures = service.invokeAll(independentThreads);
-
-        for (Future<T> future : futures) {
-          try {
-            T better = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
-            double betterScore = scorer.score(better);
-            if (betterScore > currentBestScore) {
-              currentBest = better;
-              currentBestScore = betterScore;
-            }
-          } catch (TimeoutException e) {
-            logger.log(Level.WARNING, "Sub-optimizer timed out.  Skipping.");
-          } catch (ExecutionException e) {
-            logger.log(Level.SEVERE, "Sub-optimizer threw an exception.  Skipping.", e.getCause());
-          }
-        }
+        currentBest = runRound(independentThreads, currentBest);
       } catch (InterruptedException e) {
         logger.log(Level.WARNING, "Thread interrupted, returning current best.");
         break;
@@ -115,52 +152,60 @@ public final class ConcurrentOptimizer<T> implements Optimizer<T> {
     return currentBest;
   }
 
+  @Override
   public T iterate(Duration duration, T initial) {
-    long timeoutMillis = iterTimeout.getMillis();
-    long start = System.currentTimeMillis();
+    return iterate(duration, Duration.ZERO, initial);
+  }
+
+  @Override
+  public T iterate(Duration duration, Duration elapsed, T initial) {
+    Scored<T> scoredInitial = Scored.of(initial, scorer.score(initial));
+    long start = System.currentTimeMillis() - elapsed.getMillis();
+    Scored<T> currentBest = islandModel
+        ? iterateIslands(start, duration, scoredInitial)
+        : iterateInRounds(start, duration, scoredInitial);
+    if (telemetry != null) {
+      telemetry.flush();
+    }
+    logger.log(Level.FINE, "Scorer statistics: {0}", scorer);
+    return currentBest.getState();
+  }
+
+  private Scored<T> iterateInRounds(long start, Duration duration, Scored<T> initial) {
+    long resumed = System.currentTimeMillis();
     long dur = duration.getMillis();
-    long lastUpdate = start;
+    long lastUpdate = resumed;
     int step;
-    T currentBest = initial;
-    double currentBestScore = scorer.score(initial);
-    Csv.Builder builder = Csv.newBuilder();
+    List<Cooling> cooling = startCooling();
+    Scored<T> currentBest = initial;
     for (step = 0; System.currentTimeMillis() - start < dur; step++) {
       logger.log(Level.INFO, "On iteration step {0}, current best has score {1}", new Object[] {
-          step, currentBestScore });
-      List<Callable<T>> independentThreads = Lists.newArrayListWithCapacity(nSubOptimizers);
-      double temp = primaryTempFun.temperature(
-          (int) (System.currentTimeMillis() - start),
-          (int) dur);
+          step, currentBest.getScore() });
+      List<Callable<Scored<T>>> independentThreads = Lists
+          .newArrayListWithCapacity(nSubOptimizers);
+      int elapsed = (int) (System.currentTimeMillis() - start);
       for (int i = 0; i < nSubOptimizers; i++) {
-        independentThreads.add(runSingleThreadPass(currentBest, temp));
+        independentThreads.add(runSingleThreadPass(
+            currentBest,
+            cooling.get(i),
+            elapsed,
+            (int) dur,
+            streams.split(),
+            start,
+            i,
+            currentBest.getScore()));
       }
       try {
-        List<Future<T>> futures = service.invokeAll(independentThreads);
-
-        for (Future<T> future : futures) {
-          try {
-            T better = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
-            double betterScore = scorer.score(better);
-            if (betterScore > currentBestScore) {
-              currentBest = better;
-              currentBestScore = betterScore;
-              lastUpdate = System.currentTimeMillis();
-            }
-          } catch (TimeoutException e) {
-            logger.log(Level.WARNING, "Sub-optimizer timed out.  Skipping.");
-          } catch (ExecutionException e) {
-            logger.log(Level.SEVERE, "Sub-optimizer threw an exception.  Skipping.", e.getCause());
-          }
+        Scored<T> roundBest = runRound(independentThreads, currentBest);
+        if (roundBest != currentBest) {
+          currentBest = roundBest;
+          lastUpdate = System.currentTimeMillis();
         }
       } catch (InterruptedException e) {
         logger.log(Level.WARNING, "Thread interrupted, returning current best.");
         break;
       }
-      builder.add(Csv
-          .newRowBuilder()
-          .add("%d", System.currentTimeMillis() - start)
-          .add("%f", currentBestScore)
-          .build());
+      reportProgress(System.currentTimeMillis() - start, currentBest);
       if ((System.currentTimeMillis() - lastUpdate) > dur * ratio) {
         logger.log(Level.INFO, "Cutting off optimization for lack of progress");
         break;
@@ -171,30 +216,269 @@ public final class ConcurrentOptimizer<T> implements Optimizer<T> {
           Level.INFO,
           "Average optimizer iteration took {0}",
           Duration
-              .millis((long) (System.currentTimeMillis() - start) / step)
+              .millis((long) (System.currentTimeMillis() - resumed) / step)
               .toPeriod()
               .toString(Converters.PERIOD_FORMATTER));
     }
+    return currentBest;
+  }
+
+  /*
+   * Runs a round of sub-optimizer passes, and returns the best of their results and currentBest.
+   * Passes still running when the iteration timeout expires are interrupted and skipped, so a
+   * straggler cannot hold up the round. The sub-optimizers stop at their next step once
+   * interrupted.
+   */
+  private Scored<T> runRound(List<Callable<Scored<T>>> passes, Scored<T> currentBest)
+      throws InterruptedException {
+    List<Future<Scored<T>>> futures = service.invokeAll(
+        passes,
+        iterTimeout.getMillis(),
+        TimeUnit.MILLISECONDS);
+    for (Future<Scored<T>> future : futures) {
+      try {
+        Scored<T> better = future.get();
+        if (better.getScore() > currentBest.getScore()) {
+          currentBest = better;
+        }
+      } catch (CancellationException e) {
+        logger.log(Level.WARNING, "Sub-optimizer timed out.  Skipping.");
+      } catch (ExecutionException e) {
+        logger.log(Level.SEVERE, "Sub-optimizer threw an exception.  Skipping.", e.getCause());
+      }
+    }
+    return currentBest;
+  }
+
+  /*
+   * Runs each island as a chain of single-threaded passes, each of which submits the next pass of
+   * its island when it finishes, so that no thread ever waits for the others to catch up. Islands
+   * publish improvements to a shared best, and migrate it in according to the migration policy.
+   */
+  private Scored<T> iterateIslands(long start, Duration duration, Scored<T> initial) {
+    Islands islands = new Islands(start, duration.getMillis(), initial);
+    for (int i = 0; i < nSubOptimizers; i++) {
+      service.execute(new Island(islands, i, initial, streams.split()));
+    }
     try {
-      Files.write(builder.build().toString(), new File("optimization-log.csv"), Charsets.UTF_8);
-    } catch (IOException e) {
-      logger.throwing("ConcurrentOptimizer", "log", e);
+      while (!islands.finished.await(ISLAND_REPORT_MILLIS, TimeUnit.MILLISECONDS)) {
+        Scored<T> currentBest = islands.globalBest.get();
+        logger.log(Level.INFO, "After {0} island passes, current best has score {1}", new Object[] {
+            islands.passes.get(), currentBest.getScore() });
+        reportProgress(System.currentTimeMillis() - islands.start, currentBest);
+        if (System.currentTimeMillis() - islands.start > islands.dur + iterTimeout.getMillis()) {
+          logger.log(Level.WARNING, "Islands did not finish in time.  Returning current best.");
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, "Thread interrupted, returning current best.");
     }
+    islands.stopped = true;
+    Scored<T> currentBest = islands.globalBest.get();
+    logger.log(Level.INFO, "Ran {0} island passes in {1}", new Object[] {
+        islands.passes.get(),
+        Duration
+            .millis(System.currentTimeMillis() - islands.start)
+            .toPeriod()
+            .toString(Converters.PERIOD_FORMATTER) });
     return currentBest;
   }
 
-  private Callable<T> runSingleThreadPass(final T initial, final double tempScale) {
-    return new Callable<T>() {
+  /**
+   * The state shared by all the islands of a single optimization.
+   */
+  private final class Islands {
+    private final long start;
+    private final long dur;
+    private final AtomicReference<Scored<T>> globalBest;
+    private final AtomicLong lastImprovement = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger passes = new AtomicInteger();
+    private final CountDownLatch finished = new CountDownLatch(nSubOptimizers);
+    private volatile boolean stopped = false;
+
+    Islands(long start, long dur, Scored<T> initial) {
+      this.start = start;
+      this.dur = dur;
+      this.globalBest = new AtomicReference<Scored<T>>(initial);
+    }
+
+    boolean shouldStop() {
+      if (stopped) {
+        return true;
+      }
+      long now = System.currentTimeMillis();
+      if (now - start >= dur) {
+        return true;
+      } else if (now - lastImprovement.get() > dur * ratio) {
+        if (!stopped) {
+          stopped = true;
+          logger.log(Level.INFO, "Cutting off optimization for lack of progress");
+        }
+        return true;
+      }
+      return false;
+    }
+
+    void publish(Scored<T> candidate) {
+      while (true) {
+        Scored<T> best = globalBest.get();
+        if (candidate.getScore() <= best.getScore()) {
+          return;
+        } else if (globalBest.compareAndSet(best, candidate)) {
+          lastImprovement.set(System.currentTimeMillis());
+          return;
+        }
+      }
+    }
+  }
+
+  private final class Island implements Runnable {
+    private final Islands islands;
+    private final int index;
+    private final Cooling cooling = new Cooling();
+    private final Random stream;
+    private Scored<T> current;
+    private int passes = 0;
+
+    Island(Islands islands, int index, Scored<T> initial, Random stream) {
+      this.islands = islands;
+      this.index = index;
+      this.stream = stream;
+      this.current = initial;
+    }
+
+    @Override
+    public void run() {
+      boolean resubmitted = false;
+      try {
+        if (islands.shouldStop()) {
+          return;
+        }
+        if (passes % migrationInterval == 0) {
+          current = migrationPolicy.migrate(current, islands.globalBest.get());
+        }
+        current = runSingleThreadPass(
+            current,
+            cooling,
+            (int) (System.currentTimeMillis() - islands.start),
+            (int) islands.dur,
+            stream,
+            islands.start,
+            index,
+            islands.globalBest.get().getScore()).call();
+        passes++;
+        islands.passes.incrementAndGet();
+        islands.publish(current);
+        service.execute(this);
+        resubmitted = true;
+      } catch (Exception e) {
+        logger.log(Level.SEVERE, "Island threw an exception.  Abandoning it.", e);
+      } finally {
+        if (!resubmitted) {
+          islands.finished.countDown();
+        }
+      }
+    }
+  }
+
+  private List<Cooling> startCooling() {
+    List<Cooling> cooling = Lists.newArrayListWithCapacity(nSubOptimizers);
+    for (int i = 0; i < nSubOptimizers; i++) {
+      cooling.add(new Cooling());
+    }
+    return cooling;
+  }
+
+  /**
+   * The temperature functions of a single worker. Adaptive temperature functions keep statistics
+   * on the steps the worker has taken, so every worker has its own, kept from pass to pass. Both
+   * are told about every step of the worker's sub-optimizers.
+   */
+  private final class Cooling {
+    private final TemperatureFunction primary = primaryTempFun.get();
+    private final TemperatureFunction sub = subTempFun.get();
+
+    /*
+     * Held by the pass using these functions. A pass that timed out may still be finishing its
+     * last step when the worker's pass in the next round starts, so that pass waits for it.
+     */
+    private final Lock inUse = new ReentrantLock();
+
+    void observe(boolean accepted, double currentScore, double bestScore) {
+      if (primary instanceof AdaptiveTemperatureFunction) {
+        ((AdaptiveTemperatureFunction) primary).observe(accepted, currentScore, bestScore);
+      }
+      if (sub instanceof AdaptiveTemperatureFunction) {
+        ((AdaptiveTemperatureFunction) sub).observe(accepted, currentScore, bestScore);
+      }
+    }
+  }
+
+  private void reportProgress(long elapsedMillis, Scored<T> currentBest) {
+    if (progressListener != null) {
+      progressListener.onProgress(elapsedMillis, currentBest);
+    }
+  }
+
+  /*
+   * Returns a pass of a single-threaded optimizer that cools according to the specified worker's
+   * temperature functions, scaled by the primary temperature at primaryStep of primarySteps, and
+   * draws all its random numbers from the specified stream, whichever thread runs it, and reports
+   * the pass to the telemetry sink as the specified worker. knownBest is the best score found by
+   * any worker when the pass begins.
+   */
+  private Callable<Scored<T>> runSingleThreadPass(
+      final Scored<T> initial,
+      final Cooling cooling,
+      final int primaryStep,
+      final int primarySteps,
+      final Random stream,
+      final long start,
+      final int worker,
+      final double knownBest) {
+    return new Callable<Scored<T>>() {
       @Override
-      public T call() {
-        Optimizer<T> optimizer = optimizerFactory.create(new TemperatureFunction() {
+      public Scored<T> call() throws InterruptedException {
+        cooling.inUse.lockInterruptibly();
+        try {
+          return runPass(cooling.primary.temperature(primaryStep, primarySteps));
+        } finally {
+          cooling.inUse.unlock();
+        }
+      }
+
+      private Scored<T> runPass(final double tempScale) {
+        Optimizer<T> optimizer = optimizerFactory.create(new AdaptiveTemperatureFunction() {
 
           @Override
           public double temperature(int currentStep, int nSteps) {
-            return tempScale * subTempFun.temperature(currentStep, nSteps);
+            return tempScale * cooling.sub.temperature(currentStep, nSteps);
+          }
+
+          @Override
+          public void observe(boolean accepted, double currentScore, double bestScore) {
+            cooling.observe(accepted, currentScore, bestScore);
           }
         });
-        return optimizer.iterate(subOptimizerSteps, initial);
+        Random previous = streams.install(stream);
+        Scored<T> result;
+        try {
+          result = optimizer.iterateScored(subOptimizerSteps, initial);
+        } finally {
+          streams.install(previous);
+        }
+        if (telemetry != null && optimizer instanceof InstrumentedOptimizer) {
+          PassStatistics pass = ((InstrumentedOptimizer<T>) optimizer).getLastPassStatistics();
+          if (pass != null) {
+            telemetry.record(
+                System.currentTimeMillis() - start,
+                worker,
+                Math.max(knownBest, result.getScore()),
+                pass);
+          }
+        }
+        return result;
       }
     };
   }
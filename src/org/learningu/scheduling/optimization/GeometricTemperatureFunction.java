@@ -0,0 +1,47 @@
+package org.learningu.scheduling.optimization;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.inject.Inject;
+
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
+
+/**
+ * A temperature function that cools geometrically, by the same factor on every step, from the
+ * initial temperature to the final temperature.
+ * 
+ * @author lowasser
+ */
+public final class GeometricTemperatureFunction implements TemperatureFunction {
+  private final double initialTemperature;
+
+  private final double finalTemperature;
+
+  @Inject
+  GeometricTemperatureFunction(AdaptiveTemperatureSpec spec) {
+    checkArgument(
+        0 < spec.getFinalTemperature()
+            && spec.getFinalTemperature() <= spec.getInitialTemperature(),
+        "Invalid temperature range [%s, %s]",
+        spec.getFinalTemperature(),
+        spec.getInitialTemperature());
+    this.initialTemperature = spec.getInitialTemperature();
+    this.finalTemperature = spec.getFinalTemperature();
+  }
+
+  @Override
+  public double temperature(int currentStep, int nSteps) {
+    return geometric(initialTemperature, finalTemperature, currentStep, nSteps);
+  }
+
+  /**
+   * Returns the temperature {@code currentStep} steps into a geometric cooling from {@code from} to
+   * {@code to} over {@code nSteps} steps.
+   */
+  static double geometric(double from, double to, int currentStep, int nSteps) {
+    if (currentStep >= nSteps) {
+      return to;
+    }
+    return from * Math.pow(to / from, ((double) currentStep) / nSteps);
+  }
+}
@@ -0,0 +1,48 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * A scorer which can follow a single mutable state as it is modified in place, updating the score
+ * in time proportional to the size of each modification instead of rescoring the whole state.
+ * 
+ * <p>
+ * {@link #score} remains a full, from-scratch evaluation, and may be used to verify the tracked
+ * scores.
+ * 
+ * @author lowasser
+ */
+public interface IncrementalScorer<T> extends Scorer<T> {
+  /**
+   * Returns a new tracker following the specified mutable state, initialized with a full score of
+   * its current contents. The state must not have any uncommitted modifications.
+   */
+  Tracker track(T mutableState);
+
+  /**
+   * The score of a single mutable state, kept up to date with its {@link Journaling} operations.
+   * Trackers are not thread-safe, and are confined to the thread that owns the state.
+   */
+  interface Tracker {
+    /**
+     * Returns the score of the tracked state as of the last update, commit or rollback.
+     */
+    double getScore();
+
+    /**
+     * Catches up with every modification made to the tracked state since the last update, and
+     * returns its new score.
+     */
+    double update();
+
+    /**
+     * Accepts the modifications scored since the last commit. Must be called whenever the tracked
+     * state is committed.
+     */
+    void commit();
+
+    /**
+     * Undoes the modifications scored since the last commit. Must be called whenever the tracked
+     * state is rolled back.
+     */
+    void rollback();
+  }
+}
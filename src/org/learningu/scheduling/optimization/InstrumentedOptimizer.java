@@ -0,0 +1,14 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * An optimizer that keeps statistics on the work it does, for telemetry.
+ * 
+ * @author lowasser
+ */
+public interface InstrumentedOptimizer<T> extends Optimizer<T> {
+  /**
+   * Returns the statistics of the most recent call to {@link #iterateScored}, or {@code null} if
+   * there has been none.
+   */
+  PassStatistics getLastPassStatistics();
+}
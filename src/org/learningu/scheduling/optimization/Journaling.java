@@ -0,0 +1,29 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * Support for modifying states in place and undoing the modifications, so that an optimizer need
+ * not allocate a new state for every candidate it considers and then throws away.
+ * 
+ * @author lowasser
+ */
+public interface Journaling<T> {
+  /**
+   * Returns a copy of the specified state which perturbers will modify in place.
+   */
+  T mutableCopy(T state);
+
+  /**
+   * Undoes every modification to the mutable state since the last commit.
+   */
+  void rollback(T mutableState);
+
+  /**
+   * Accepts every modification to the mutable state since the last commit.
+   */
+  void commit(T mutableState);
+
+  /**
+   * Returns an immutable copy of the current contents of the mutable state.
+   */
+  T snapshot(T mutableState);
+}
@@ -0,0 +1,43 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * Policies for when an island of an island-model optimizer should adopt the best state found by
+ * any island.
+ * 
+ * @author lowasser
+ */
+public enum MigrationPolicy {
+  /**
+   * Islands never adopt the global best, and evolve independently.
+   */
+  NONE {
+    @Override
+    <T> Scored<T> migrate(Scored<T> island, Scored<T> globalBest) {
+      return island;
+    }
+  },
+  /**
+   * An island adopts the global best whenever it is strictly better than the island's own state.
+   */
+  IF_BETTER {
+    @Override
+    <T> Scored<T> migrate(Scored<T> island, Scored<T> globalBest) {
+      return (globalBest.getScore() > island.getScore()) ? globalBest : island;
+    }
+  },
+  /**
+   * An island always restarts from the global best. With a migration interval of one pass, this
+   * behaves like the round-based optimizer, without waiting for the other islands.
+   */
+  ALWAYS {
+    @Override
+    <T> Scored<T> migrate(Scored<T> island, Scored<T> globalBest) {
+      return globalBest;
+    }
+  };
+
+  /**
+   * Returns the state an island should continue from, given its own state and the global best.
+   */
+  abstract <T> Scored<T> migrate(Scored<T> island, Scored<T> globalBest);
+}
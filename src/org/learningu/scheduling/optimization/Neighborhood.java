@@ -0,0 +1,40 @@
+package org.learningu.scheduling.optimization;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.util.ModifiedState;
+
+/**
+ * A source of small, concrete moves from a state, for optimizers that compare several candidate
+ * moves before committing to one.
+ * 
+ * @author lowasser
+ */
+public interface Neighborhood<T> {
+  /**
+   * Returns a move chosen at random from the neighborhood of the specified state, or {@code null}
+   * if this attempt failed to find one.
+   */
+  @Nullable
+  Move<T> sample(T state);
+
+  /**
+   * A single move. Each move sets some attribute of the state, such as an assignment, and may
+   * remove others; tabu search forbids moves that would restore recently removed attributes.
+   */
+  interface Move<T> {
+    /**
+     * Returns the attribute this move sets. Attributes must implement {@code equals} and
+     * {@code hashCode}.
+     */
+    Object getAttribute();
+
+    /**
+     * Applies this move to the specified state, returning the attributes it removed along with
+     * the new state. Mutable states are modified in place.
+     */
+    ModifiedState<Collection<Object>, T> apply(T state);
+  }
+}
@@ -9,4 +9,10 @@ public interface Optimizer<T> {
   Scorer<T> getScorer();
 
   T iterate(int steps, T initial);
+
+  /**
+   * Optimizes starting from a state whose score is already known, and returns the best state found
+   * together with its score, so that neither need be scored again.
+   */
+  Scored<T> iterateScored(int steps, Scored<T> initial);
 }
@@ -0,0 +1,89 @@
+package org.learningu.scheduling.optimization;
+
+import com.google.common.base.Objects;
+
+/**
+ * What a single-threaded optimizer did on its most recent pass: how many candidate states it
+ * proposed and accepted, how long that took, and where it stopped.
+ * 
+ * @author lowasser
+ */
+public final class PassStatistics {
+  public static PassStatistics of(
+      long proposals,
+      long accepted,
+      long elapsedNanos,
+      double currentScore,
+      double temperature) {
+    return new PassStatistics(proposals, accepted, elapsedNanos, currentScore, temperature);
+  }
+
+  private final long proposals;
+
+  private final long accepted;
+
+  private final long elapsedNanos;
+
+  private final double currentScore;
+
+  private final double temperature;
+
+  private PassStatistics(
+      long proposals,
+      long accepted,
+      long elapsedNanos,
+      double currentScore,
+      double temperature) {
+    this.proposals = proposals;
+    this.accepted = accepted;
+    this.elapsedNanos = elapsedNanos;
+    this.currentScore = currentScore;
+    this.temperature = temperature;
+  }
+
+  public long getProposals() {
+    return proposals;
+  }
+
+  public long getAccepted() {
+    return accepted;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Returns the score of the state the pass ended on, which need not be the best it found.
+   */
+  public double getCurrentScore() {
+    return currentScore;
+  }
+
+  /**
+   * Returns the temperature the pass started at.
+   */
+  public double getTemperature() {
+    return temperature;
+  }
+
+  public double acceptRate() {
+    return (proposals == 0) ? 0.0 : ((double) accepted) / proposals;
+  }
+
+  public double proposalsPerSecond() {
+    return (elapsedNanos == 0) ? 0.0 : proposals * 1e9 / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return Objects
+        .toStringHelper(this)
+        .add("proposals", proposals)
+        .add("accepted", accepted)
+        .add("elapsedNanos", elapsedNanos)
+        .add("currentScore", currentScore)
+        .add("temperature", temperature)
+        .toString();
+  }
+}
@@ -0,0 +1,14 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * Follows the best state found as a timed optimization progresses. Listeners are called on the
+ * thread that called the optimizer, between rounds of work.
+ * 
+ * @author lowasser
+ */
+public interface ProgressListener<T> {
+  /**
+   * Reports the best state found in the specified time since the optimization began.
+   */
+  void onProgress(long elapsedMillis, Scored<T> best);
+}
@@ -0,0 +1,88 @@
+package org.learningu.scheduling.optimization;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.inject.Inject;
+
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
+
+/**
+ * A temperature function that cools geometrically, and reheats whenever the best score has not
+ * improved for the configured number of steps, so that an optimizer stuck in a local optimum gets
+ * another chance to climb out of it. Each reheat peaks at a fraction of the previous peak, and
+ * cools geometrically from there to the final temperature over the rest of the run.
+ * 
+ * <p>
+ * Stagnation is measured in the steps this function is asked for temperatures at, not in
+ * observations: sub-optimizer steps for a sub-optimizer temperature, elapsed milliseconds for a
+ * primary temperature. When the steps start over, as they do on every sub-optimizer pass, the
+ * cooling restarts from the current peak, and the stagnation carries over.
+ * 
+ * @author lowasser
+ */
+public final class ReheatingTemperatureFunction implements AdaptiveTemperatureFunction {
+  private final double finalTemperature;
+
+  private final int stagnationSteps;
+
+  private final double reheatFactor;
+
+  private double peak;
+
+  private int restartStep = 0;
+
+  private int lastStep = 0;
+
+  private double bestScore = Double.NEGATIVE_INFINITY;
+
+  // the number of steps since the best score last improved or we last reheated
+  private int stagnantSteps = 0;
+
+  @Inject
+  ReheatingTemperatureFunction(AdaptiveTemperatureSpec spec) {
+    checkArgument(
+        0 < spec.getFinalTemperature()
+            && spec.getFinalTemperature() <= spec.getInitialTemperature(),
+        "Invalid temperature range [%s, %s]",
+        spec.getFinalTemperature(),
+        spec.getInitialTemperature());
+    checkArgument(spec.getStagnationSteps() > 0, "Stagnation steps must be positive");
+    checkArgument(
+        0 < spec.getReheatFactor() && spec.getReheatFactor() <= 1,
+        "Invalid reheat factor %s",
+        spec.getReheatFactor());
+    this.finalTemperature = spec.getFinalTemperature();
+    this.stagnationSteps = spec.getStagnationSteps();
+    this.reheatFactor = spec.getReheatFactor();
+    this.peak = spec.getInitialTemperature();
+  }
+
+  @Override
+  public double temperature(int currentStep, int nSteps) {
+    if (currentStep < lastStep) {
+      // a new pass
+      restartStep = 0;
+      stagnantSteps += currentStep;
+    } else {
+      stagnantSteps += currentStep - lastStep;
+    }
+    lastStep = currentStep;
+    return GeometricTemperatureFunction.geometric(
+        peak,
+        finalTemperature,
+        currentStep - restartStep,
+        nSteps - restartStep);
+  }
+
+  @Override
+  public void observe(boolean accepted, double currentScore, double bestScore) {
+    if (bestScore > this.bestScore) {
+      this.bestScore = bestScore;
+      stagnantSteps = 0;
+    } else if (stagnantSteps >= stagnationSteps) {
+      stagnantSteps = 0;
+      restartStep = lastStep;
+      peak = Math.max(finalTemperature, peak * reheatFactor);
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package org.learningu.scheduling.optimization;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.joda.time.Duration;
+import org.learningu.scheduling.Pass.ReplicaExchangeSpec;
+import org.learningu.scheduling.util.RandomStreams;
+
+/**
+ * An optimizer based on parallel tempering, or replica exchange. Each replica is a Metropolis chain
+ * at a fixed temperature on a geometric ladder; the chains run in parallel, and after every
+ * {@code stepsPerExchange} steps adjacent chains swap states according to the Metropolis
+ * criterion. Hot chains explore freely and pass promising states down to the cold chains, which
+ * refine them, without every chain being restarted from the best state found so far.
+ * 
+ * @author lowasser
+ */
+public final class ReplicaExchangeOptimizer<T> implements TimedOptimizer<T> {
+  private final Scorer<T> scorer;
+
+  private final AcceptanceFunction acceptFun;
+
+  private final ExecutorService service;
+
+  private final Random random;
+
+  private final RandomStreams streams;
+
+  private final Logger logger;
+
+  private final Provider<Perturber<T>> perturberProvider;
+
+  private final ImmutableList<Double> temperatures;
+
+  private final int stepsPerExchange;
+
+  @Inject(optional = true)
+  private ProgressListener<T> progressListener = null;
+
+  @Inject(optional = true)
+  private TelemetrySink telemetry = null;
+
+  @Inject
+  ReplicaExchangeOptimizer(
+      Provider<Perturber<T>> perturberProvider,
+      Scorer<T> scorer,
+      AcceptanceFunction acceptFun,
+      ExecutorService service,
+      Random random,
+      RandomStreams streams,
+      Logger logger,
+      ReplicaExchangeSpec spec) {
+    this.perturberProvider = checkNotNull(perturberProvider);
+    this.scorer = checkNotNull(scorer);
+    this.acceptFun = checkNotNull(acceptFun);
+    this.service = checkNotNull(service);
+    this.random = checkNotNull(random);
+    this.streams = checkNotNull(streams);
+    this.logger = checkNotNull(logger);
+    checkArgument(spec.getReplicas() > 0, "Must have at least one replica");
+    checkArgument(
+        0 < spec.getMinTemperature() && spec.getMinTemperature() <= spec.getMaxTemperature(),
+        "Invalid temperature range [%s, %s]",
+        spec.getMinTemperature(),
+        spec.getMaxTemperature());
+    checkArgument(spec.getStepsPerExchange() > 0, "Must take at least one step per exchange");
+    this.temperatures = temperatureLadder(
+        spec.getReplicas(),
+        spec.getMinTemperature(),
+        spec.getMaxTemperature());
+    this.stepsPerExchange = spec.getStepsPerExchange();
+  }
+
+  /**
+   * Returns {@code replicas} temperatures in geometric progression from {@code min} to {@code max},
+   * so that adjacent chains overlap about equally all the way up the ladder.
+   */
+  static ImmutableList<Double> temperatureLadder(int replicas, double min, double max) {
+    ImmutableList.Builder<Double> builder = ImmutableList.builder();
+    if (replicas == 1) {
+      return builder.add(min).build();
+    }
+    double ratio = Math.pow(max / min, 1.0 / (replicas - 1));
+    double temperature = min;
+    for (int i = 0; i < replicas; i++) {
+      builder.add(temperature);
+      temperature *= ratio;
+    }
+    return builder.build();
+  }
+
+  @Override
+  public Scorer<T> getScorer() {
+    return scorer;
+  }
+
+  @Override
+  public T iterate(int steps, T initial) {
+    return iterateScored(steps, Scored.of(initial, scorer.score(initial))).getState();
+  }
+
+  /**
+   * Runs the specified number of exchange rounds, each of {@code stepsPerExchange} steps of every
+   * chain.
+   */
+  @Override
+  public Scored<T> iterateScored(int steps, Scored<T> initial) {
+    long start = System.currentTimeMillis();
+    List<Replica> replicas = startReplicas(initial);
+    for (int round = 0; round < steps; round++) {
+      if (!runRound(replicas, round, start)) {
+        break;
+      }
+    }
+    return best(replicas);
+  }
+
+  @Override
+  public T iterate(Duration duration, T initial) {
+    return iterate(duration, Duration.ZERO, initial);
+  }
+
+  @Override
+  public T iterate(Duration duration, Duration elapsed, T initial) {
+    long start = System.currentTimeMillis() - elapsed.getMillis();
+    List<Replica> replicas = startReplicas(Scored.of(initial, scorer.score(initial)));
+    int round;
+    for (round = 0; System.currentTimeMillis() - start < duration.getMillis(); round++) {
+      if (!runRound(replicas, round, start)) {
+        break;
+      }
+      if (progressListener != null) {
+        progressListener.onProgress(System.currentTimeMillis() - start, best(replicas));
+      }
+    }
+    if (telemetry != null) {
+      telemetry.flush();
+    }
+    logger.log(Level.INFO, "Ran {0} replica exchange rounds", round);
+    logger.log(Level.FINE, "Scorer statistics: {0}", scorer);
+    return best(replicas).getState();
+  }
+
+  private List<Replica> startReplicas(Scored<T> initial) {
+    ImmutableList.Builder<Replica> builder = ImmutableList.builder();
+    for (double temperature : temperatures) {
+      builder.add(new Replica(temperature, perturberProvider.get(), streams.split(), initial));
+    }
+    return builder.build();
+  }
+
+  /*
+   * Runs every chain for stepsPerExchange steps in parallel, then attempts to swap the states of
+   * alternately the even and the odd pairs of adjacent chains. Returns false if interrupted.
+   */
+  private boolean runRound(List<Replica> replicas, int round, long start) {
+    try {
+      for (Future<Void> future : service.invokeAll(replicas)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          logger.log(Level.SEVERE, "Replica threw an exception.  Skipping.", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, "Thread interrupted, returning current best.");
+      return false;
+    }
+    if (telemetry != null) {
+      double bestScore = best(replicas).getScore();
+      for (int i = 0; i < replicas.size(); i++) {
+        if (replicas.get(i).lastPass != null) {
+          telemetry.record(
+              System.currentTimeMillis() - start,
+              i,
+              bestScore,
+              replicas.get(i).lastPass);
+        }
+      }
+    }
+    int swaps = 0;
+    for (int i = round % 2; i + 1 < replicas.size(); i += 2) {
+      if (exchange(replicas.get(i), replicas.get(i + 1))) {
+        swaps++;
+      }
+    }
+    logger.log(
+        Level.INFO,
+        "On exchange round {0}, current best has score {1}; {2} swaps",
+        new Object[] { round, best(replicas).getScore(), swaps });
+    return true;
+  }
+
+  /*
+   * Each chain samples states with probability proportional to exp(score / temperature), so
+   * swapping the states of two chains preserves both distributions if accepted with probability
+   * exp((1 / coldTemp - 1 / hotTemp) * (hotScore - coldScore)).
+   */
+  private boolean exchange(Replica cold, Replica hot) {
+    double exponent = (1.0 / cold.temperature - 1.0 / hot.temperature)
+        * (hot.current.getScore() - cold.current.getScore());
+    if (exponent >= 0 || random.nextDouble() < Math.exp(exponent)) {
+      Scored<T> tmp = cold.current;
+      cold.current = hot.current;
+      hot.current = tmp;
+      return true;
+    }
+    return false;
+  }
+
+  private Scored<T> best(List<Replica> replicas) {
+    Scored<T> best = null;
+    for (Replica replica : replicas) {
+      if (best == null || replica.best.getScore() > best.getScore()) {
+        best = replica.best;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * A single Metropolis chain at a fixed temperature, drawing from its own random stream. The fields
+   * are only accessed by one thread at a time, handed off by the executor.
+   */
+  private final class Replica implements Callable<Void> {
+    private final double temperature;
+    private final Perturber<T> perturber;
+    private final Random stream;
+    private Scored<T> current;
+    private Scored<T> best;
+    private PassStatistics lastPass = null;
+
+    Replica(double temperature, Perturber<T> perturber, Random stream, Scored<T> initial) {
+      this.temperature = temperature;
+      this.perturber = perturber;
+      this.stream = stream;
+      this.current = initial;
+      this.best = initial;
+    }
+
+    @Override
+    public Void call() {
+      long startNanos = System.nanoTime();
+      long accepted = 0;
+      Random previous = streams.install(stream);
+      try {
+        for (int i = 0; i < stepsPerExchange; i++) {
+          T next = perturber.perturb(current.getState(), temperature);
+          double nextScore = scorer.score(next);
+          if (acceptFun.acceptNewState(current.getScore(), nextScore, temperature)) {
+            current = Scored.of(next, nextScore);
+            accepted++;
+          }
+          if (nextScore > best.getScore()) {
+            best = Scored.of(next, nextScore);
+          }
+        }
+      } finally {
+        streams.install(previous);
+      }
+      lastPass = PassStatistics.of(
+          stepsPerExchange,
+          accepted,
+          System.nanoTime() - startNanos,
+          current.getScore(),
+          temperature);
+      return null;
+    }
+  }
+}
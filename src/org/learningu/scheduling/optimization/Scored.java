@@ -0,0 +1,39 @@
+package org.learningu.scheduling.optimization;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+/**
+ * A state together with its score, so that a state which has already been scored can be passed
+ * between optimizers without being scored again.
+ * 
+ * @author lowasser
+ */
+public final class Scored<T> {
+  public static <T> Scored<T> of(T state, double score) {
+    return new Scored<T>(state, score);
+  }
+
+  private final T state;
+
+  private final double score;
+
+  private Scored(T state, double score) {
+    this.state = checkNotNull(state);
+    this.score = score;
+  }
+
+  public T getState() {
+    return state;
+  }
+
+  public double getScore() {
+    return score;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("score", score).add("state", state).toString();
+  }
+}
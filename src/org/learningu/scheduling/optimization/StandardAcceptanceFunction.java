@@ -18,6 +18,6 @@ public final class StandardAcceptanceFunction implements AcceptanceFunction {
       return true;
     }
     double probability = Math.exp((newScore - originalScore) / temperature);
-    return random.nextLong() < probability;
+    return random.nextDouble() < probability;
   }
 }
@@ -0,0 +1,240 @@
+package org.learningu.scheduling.optimization;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.inject.Inject;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.Pass.TabuSearchSpec;
+import org.learningu.scheduling.util.ModifiedState;
+
+/**
+ * An optimizer based on tabu search. On each step it samples a neighborhood of moves from the
+ * current state and takes the best of them, even if it is worse than the current state. Every
+ * attribute a move removes becomes tabu for a while -- moves that would restore it are not taken
+ * unless they would find a new best state -- so the search does not cycle back to states it has
+ * just left.
+ *
+ * <p>
+ * If the state supports {@link Journaling}, candidate moves are evaluated in place and rolled back,
+ * using an {@link IncrementalScorer} when one is available.
+ *
+ * @author lowasser
+ */
+public final class TabuSearch<T> implements InstrumentedOptimizer<T> {
+  private final Neighborhood<T> neighborhood;
+
+  private final Scorer<T> scorer;
+
+  private final Logger logger;
+
+  private final int neighborhoodSize;
+
+  private final int tenure;
+
+  @Inject(optional = true)
+  private Journaling<T> journaling = null;
+
+  @Nullable
+  private PassStatistics lastPass = null;
+
+  @Inject
+  TabuSearch(Neighborhood<T> neighborhood, Scorer<T> scorer, Logger logger, TabuSearchSpec spec) {
+    this.neighborhood = checkNotNull(neighborhood);
+    this.scorer = checkNotNull(scorer);
+    this.logger = checkNotNull(logger);
+    checkArgument(spec.getNeighborhoodSize() > 0, "Must sample at least one move per step");
+    checkArgument(spec.getTenure() >= 0, "Tabu tenure must be nonnegative");
+    this.neighborhoodSize = spec.getNeighborhoodSize();
+    this.tenure = spec.getTenure();
+  }
+
+  @Override
+  public Scorer<T> getScorer() {
+    return scorer;
+  }
+
+  @Override
+  public PassStatistics getLastPassStatistics() {
+    return lastPass;
+  }
+
+  @Override
+  public T iterate(int steps, T initial) {
+    return iterateScored(steps, Scored.of(initial, scorer.score(initial))).getState();
+  }
+
+  @Override
+  public Scored<T> iterateScored(int steps, Scored<T> initial) {
+    logger.log(Level.FINE, "Tabu search for {0} steps; initial score is {1}", new Object[] {
+        steps, initial.getScore() });
+    return (journaling == null)
+        ? iterateFunctionally(steps, initial)
+        : iterateInPlace(steps, initial);
+  }
+
+  private Scored<T> iterateFunctionally(int steps, Scored<T> initial) {
+    long startNanos = System.nanoTime();
+    long proposals = 0;
+    long accepted = 0;
+    TabuList tabu = new TabuList();
+    Scored<T> current = initial;
+    Scored<T> best = initial;
+    for (int i = 0; i < steps && !interrupted(i); i++) {
+      Scored<T> chosen = null;
+      Collection<Object> chosenRemoved = null;
+      for (int j = 0; j < neighborhoodSize; j++) {
+        Neighborhood.Move<T> move = neighborhood.sample(current.getState());
+        if (move == null) {
+          continue;
+        }
+        proposals++;
+        ModifiedState<Collection<Object>, T> result = move.apply(current.getState());
+        double score = scorer.score(result.getNewState());
+        if (admissible(tabu, move, score, best.getScore())
+            && (chosen == null || score > chosen.getScore())) {
+          chosen = Scored.of(result.getNewState(), score);
+          chosenRemoved = result.getResult();
+        }
+      }
+      if (chosen != null) {
+        accepted++;
+        tabu.addAll(chosenRemoved);
+        current = chosen;
+        if (current.getScore() > best.getScore()) {
+          best = current;
+        }
+      }
+    }
+    // tabu search has no temperature
+    lastPass = PassStatistics.of(
+        proposals,
+        accepted,
+        System.nanoTime() - startNanos,
+        current.getScore(),
+        0.0);
+    return best;
+  }
+
+  /*
+   * Applies each candidate move to a single mutable state and rolls it back, then reapplies the
+   * chosen move and commits it.
+   */
+  private Scored<T> iterateInPlace(int steps, Scored<T> initial) {
+    long startNanos = System.nanoTime();
+    long proposals = 0;
+    long accepted = 0;
+    TabuList tabu = new TabuList();
+    T current = journaling.mutableCopy(initial.getState());
+    IncrementalScorer.Tracker tracker = track(current);
+    double currentScore = initial.getScore();
+    Scored<T> best = initial;
+    for (int i = 0; i < steps && !interrupted(i); i++) {
+      Neighborhood.Move<T> chosen = null;
+      double chosenScore = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < neighborhoodSize; j++) {
+        Neighborhood.Move<T> move = neighborhood.sample(current);
+        if (move == null) {
+          continue;
+        }
+        proposals++;
+        move.apply(current);
+        double score = (tracker == null) ? scorer.score(current) : tracker.update();
+        journaling.rollback(current);
+        if (tracker != null) {
+          tracker.rollback();
+        }
+        if (admissible(tabu, move, score, best.getScore())
+            && (chosen == null || score > chosenScore)) {
+          chosen = move;
+          chosenScore = score;
+        }
+      }
+      if (chosen != null) {
+        tabu.addAll(chosen.apply(current).getResult());
+        if (tracker != null) {
+          tracker.update();
+        }
+        journaling.commit(current);
+        if (tracker != null) {
+          tracker.commit();
+        }
+        accepted++;
+        currentScore = chosenScore;
+        if (chosenScore > best.getScore()) {
+          best = Scored.of(journaling.snapshot(current), chosenScore);
+        }
+      }
+    }
+    lastPass = PassStatistics.of(
+        proposals,
+        accepted,
+        System.nanoTime() - startNanos,
+        currentScore,
+        0.0);
+    return best;
+  }
+
+  /*
+   * Lets a cancelled pass give up its thread at the next step, keeping the best state so far.
+   */
+  private boolean interrupted(int step) {
+    if (Thread.currentThread().isInterrupted()) {
+      logger.log(Level.FINE, "Tabu search interrupted after {0} steps", step);
+      return true;
+    }
+    return false;
+  }
+
+  /*
+   * A tabu move is admissible only if it would find a new best state, the aspiration criterion.
+   */
+  private boolean admissible(
+      TabuList tabu,
+      Neighborhood.Move<?> move,
+      double score,
+      double bestScore) {
+    return score > bestScore || !tabu.contains(move.getAttribute());
+  }
+
+  @Nullable
+  private IncrementalScorer.Tracker track(T mutableState) {
+    if (scorer instanceof IncrementalScorer) {
+      @SuppressWarnings("unchecked")
+      IncrementalScorer<T> incrementalScorer = (IncrementalScorer<T>) scorer;
+      return incrementalScorer.track(mutableState);
+    }
+    return null;
+  }
+
+  /**
+   * The {@code tenure} most recently removed attributes.
+   */
+  @SuppressWarnings("serial")
+  private final class TabuList extends LinkedHashMap<Object, Boolean> {
+    void addAll(Collection<Object> attributes) {
+      for (Object attribute : attributes) {
+        // reinsert to refresh the attribute's position
+        remove(attribute);
+        put(attribute, Boolean.TRUE);
+      }
+    }
+
+    boolean contains(Object attribute) {
+      return containsKey(attribute);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Object, Boolean> eldest) {
+      return size() > tenure;
+    }
+  }
+}
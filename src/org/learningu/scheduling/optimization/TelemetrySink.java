@@ -0,0 +1,22 @@
+package org.learningu.scheduling.optimization;
+
+/**
+ * Receives a report from every pass of every worker of an optimization as it finishes, so that
+ * convergence can be watched while a long run is still going. Workers report from their own
+ * threads, so implementations must be thread-safe, and must never block for long.
+ * 
+ * @author lowasser
+ */
+public interface TelemetrySink {
+  /**
+   * Records that the specified worker finished a pass the specified time after the optimization
+   * began, when the best score found by any worker was {@code bestScore}.
+   */
+  void record(long elapsedMillis, int worker, double bestScore, PassStatistics pass);
+
+  /**
+   * Waits for the reports recorded so far to reach their destination. Called by the thread that
+   * ran the optimizer, after the workers have stopped.
+   */
+  void flush();
+}
@@ -0,0 +1,19 @@
+package org.learningu.scheduling.optimization;
+
+import org.joda.time.Duration;
+
+/**
+ * An optimizer which can run for a fixed amount of time, rather than a fixed number of steps.
+ * 
+ * @author lowasser
+ */
+public interface TimedOptimizer<T> extends Optimizer<T> {
+  T iterate(Duration duration, T initial);
+
+  /**
+   * Continues an optimization of the specified total duration, of which {@code elapsed} has
+   * already passed, from the specified state -- for example, one resumed from a checkpoint.
+   * Temperature schedules and progress reports carry on from the elapsed time.
+   */
+  T iterate(Duration duration, Duration elapsed, T initial);
+}
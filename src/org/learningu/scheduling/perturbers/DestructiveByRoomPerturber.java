@@ -33,7 +33,7 @@ public class DestructiveByRoomPerturber implements Perturber<Schedule> {
     Schedule current = initial;
     for (Room room : program.getRooms()) {
       for (ClassPeriod period : program.compatiblePeriods(room)) {
-        if (!current.occurringAt(period, room).isPresent()) {
+        if (!current.isOccupied(period, room)) {
           free.add(Maps.immutableEntry(period, room));
         }
       }
@@ -47,14 +47,11 @@ public class DestructiveByRoomPerturber implements Perturber<Schedule> {
         unscheduledSections.size(),
         (int) (Math.min(unscheduledSections.size(), free.size()) * temperature));
     for (int i = 0; i < n; i++) {
-      try {
+      ClassPeriod period = free.get(i).getKey();
+      Section section = unscheduledSections.get(i);
+      if (StartAssignment.fitsInBlock(period, section)) {
         current = current.forceAssignStart(
-            StartAssignment.create(
-                free.get(i).getKey(),
-                free.get(i).getValue(),
-                unscheduledSections.get(i))).getNewState();
-      } catch (IllegalArgumentException e) {
-        continue;
+            StartAssignment.create(period, free.get(i).getValue(), section)).getNewState();
       }
     }
     return current;
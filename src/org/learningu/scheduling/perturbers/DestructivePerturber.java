@@ -1,25 +1,31 @@
 package org.learningu.scheduling.perturbers;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 
 import java.util.List;
 import java.util.Random;
 
-import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.perturbers.SerialPerturbers.SerialSamplingMode;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
 final class DestructivePerturber implements Perturber<Schedule> {
   private final Random rand;
+  private final SlotSampler sampler;
 
   @Inject
   DestructivePerturber(Random rand) {
+    this(rand, SlotSampler.create(SerialSamplingMode.UNIFORM, null, rand));
+  }
+
+  DestructivePerturber(Random rand, SlotSampler sampler) {
     this.rand = rand;
+    this.sampler = sampler;
   }
 
   private <E> E getRandom(List<E> list) {
@@ -31,27 +37,22 @@ final class DestructivePerturber implements Perturber<Schedule> {
   public Schedule perturb(Schedule initial, double temperature) {
     Program program = initial.getProgram();
     List<Section> sections = ImmutableList.copyOf(program.getSections());
-    List<Room> rooms = ImmutableList.copyOf(program.getRooms());
-    List<ClassPeriod> periods = ImmutableList.copyOf(program.getPeriods());
 
     int nAttempts = Math.max(1, (int) (sections.size() * temperature));
 
     Schedule current = initial;
     for (int i = 0; i < nAttempts; i++) {
-      Section section = getRandom(sections);
-      Room room = getRandom(rooms);
-      ClassPeriod period = getRandom(periods);
-
-      try {
-        current = current
-            .forceAssignStart(StartAssignment.create(period, room, section))
-            .getNewState();
-      } catch (IllegalArgumentException e) {
-        continue;
+      StartAssignment assign = sampler.propose(current, getRandom(sections));
+      if (assign != null) {
+        current = current.forceAssignStart(assign).getNewState();
       }
     }
 
     return current;
   }
 
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("sampler", sampler).toString();
+  }
 }
@@ -1,6 +1,6 @@
 package org.learningu.scheduling.perturbers;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
@@ -9,11 +9,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
-import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.perturbers.SerialPerturbers.SerialSamplingMode;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -24,15 +23,16 @@ import org.learningu.scheduling.schedule.StartAssignment;
  */
 final class GreedyPerturber implements Perturber<Schedule> {
   private final Random rand;
+  private final SlotSampler sampler;
 
   @Inject
   GreedyPerturber(Random rand) {
-    this.rand = rand;
+    this(rand, SlotSampler.create(SerialSamplingMode.UNIFORM, null, rand));
   }
 
-  private <E> E getRandom(List<E> list) {
-    assert !list.isEmpty();
-    return list.get(rand.nextInt(list.size()));
+  GreedyPerturber(Random rand, SlotSampler sampler) {
+    this.rand = rand;
+    this.sampler = sampler;
   }
 
   @Override
@@ -48,21 +48,19 @@ final class GreedyPerturber implements Perturber<Schedule> {
         Math.max(1, (int) (unscheduled.size() * temperature)));
     unscheduled = unscheduled.subList(0, nAttempts);
 
-    ImmutableList<Room> rooms = ImmutableList.copyOf(program.getRooms());
-    ImmutableList<ClassPeriod> periods = ImmutableList.copyOf(program.getPeriods());
     Schedule current = initial;
     for (Section section : unscheduled) {
-      Room room = getRandom(rooms);
-      ClassPeriod pd = getRandom(periods);
-      try {
-        StartAssignment assign = StartAssignment.create(pd, room, section);
+      StartAssignment assign = sampler.propose(current, section);
+      if (assign != null) {
         current = current.assignStart(assign).getNewState();
-      } catch (IllegalArgumentException e) {
-        // not enough periods left in the block
-        continue;
       }
     }
 
     return current;
   }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("sampler", sampler).toString();
+  }
 }
@@ -0,0 +1,260 @@
+package org.learningu.scheduling.perturbers;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Subject;
+import org.learningu.scheduling.graph.TimeBlock;
+import org.learningu.scheduling.logic.FeasibilityIndex;
+import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+/**
+ * A destroy-and-repair perturber for large neighborhood search. It removes every assignment in a
+ * coherent region of the schedule -- one time block, one room, or one subject -- and then refills
+ * the region with a bounded depth-first search, which reinserts the freed sections, along with a
+ * share of the unscheduled sections proportional to the temperature, most constrained section
+ * first, backtracking when a placement leaves later sections with nowhere to go.
+ *
+ * <p>
+ * The repair keeps the placement of the most sections it finds within its budget, and stops early
+ * once every section is placed.
+ *
+ * @author lowasser
+ */
+final class LargeNeighborhoodPerturber implements Perturber<Schedule> {
+  /*
+   * The number of assignments the repair search attempts before settling for the best placement it
+   * has found.
+   */
+  private static final int MAX_REPAIR_NODES = 64;
+
+  /*
+   * The number of valid slots the repair search tries for each section before leaving it out.
+   */
+  private static final int MAX_BRANCHING = 2;
+
+  private final Random rand;
+  @Nullable
+  private final FeasibilityIndex feasibility;
+
+  LargeNeighborhoodPerturber(Random rand, @Nullable FeasibilityIndex feasibility) {
+    this.rand = checkNotNull(rand);
+    this.feasibility = feasibility;
+  }
+
+  @Override
+  public Schedule perturb(Schedule initial, double temperature) {
+    Program program = initial.getProgram();
+    Schedule current = initial.isMutable() ? initial : initial.mutableCopy();
+    Region region = chooseRegion(program);
+
+    List<Section> sections = Lists.newArrayList();
+    for (StartAssignment assign : ImmutableList.copyOf(current.getStartAssignments())) {
+      if (region.contains(assign)) {
+        current.removeStartingAt(assign.getPeriod(), assign.getRoom());
+        sections.add(assign.getSection());
+      }
+    }
+    List<Section> unscheduled = Lists.newArrayList();
+    for (Section section : Sets.difference(program.getSections(), current.getScheduledSections())) {
+      if (region.allows(section) && !sections.contains(section)) {
+        unscheduled.add(section);
+      }
+    }
+    Collections.shuffle(unscheduled, rand);
+    // the search could never place more sections than it attempts assignments, and temperatures
+    // above 1 must not ask for more sections than are unscheduled
+    int joining = Math.min(
+        Math.min(unscheduled.size(), (int) (unscheduled.size() * temperature)),
+        Math.max(0, MAX_REPAIR_NODES - sections.size()));
+    sections.addAll(unscheduled.subList(0, joining));
+
+    new Repair(current, region, sections).run();
+    return initial.isMutable() ? current : current.snapshot();
+  }
+
+  private Region chooseRegion(Program program) {
+    switch (rand.nextInt(3)) {
+      case 0:
+        return new Region(randomElement(program.getTimeBlocks()), null, null);
+      case 1:
+        return new Region(null, randomElement(program.getRooms()), null);
+      default:
+        return new Region(null, null, randomElement(program.getSubjects()));
+    }
+  }
+
+  private <E> E randomElement(Iterable<E> elements) {
+    List<E> list = ImmutableList.copyOf(elements);
+    return list.get(rand.nextInt(list.size()));
+  }
+
+  /**
+   * A region of the schedule, restricted to a time block, a room, or a subject.
+   */
+  private static final class Region {
+    @Nullable
+    private final TimeBlock block;
+    @Nullable
+    private final Room room;
+    @Nullable
+    private final Subject subject;
+
+    Region(@Nullable TimeBlock block, @Nullable Room room, @Nullable Subject subject) {
+      this.block = block;
+      this.room = room;
+      this.subject = subject;
+    }
+
+    boolean allows(Section section) {
+      return subject == null || subject.equals(section.getSubject());
+    }
+
+    boolean allows(Room room, ClassPeriod period) {
+      return (block == null || block.equals(period.getTimeBlock()))
+          && (this.room == null || this.room.equals(room));
+    }
+
+    boolean contains(StartAssignment assign) {
+      return allows(assign.getSection()) && allows(assign.getRoom(), assign.getPeriod());
+    }
+
+    @Override
+    public String toString() {
+      return Objects
+          .toStringHelper(this)
+          .add("block", block)
+          .add("room", room)
+          .add("subject", subject)
+          .toString();
+    }
+  }
+
+  /**
+   * A single bounded depth-first repair of a mutable schedule, which backtracks with marks.
+   */
+  private final class Repair {
+    private final Schedule schedule;
+    private final Region region;
+    private final List<Section> sections;
+    private final Map<Section, List<StartAssignment>> openSlots = Maps.newHashMap();
+    private final List<StartAssignment> path = Lists.newArrayList();
+    private List<StartAssignment> bestPath = ImmutableList.of();
+    private int nodes = 0;
+
+    Repair(Schedule schedule, Region region, List<Section> sections) {
+      this.schedule = schedule;
+      this.region = region;
+      Map<Section, Integer> openSlotCounts = Maps.newHashMap();
+      for (Section section : sections) {
+        List<StartAssignment> slots = openSlots(section);
+        openSlots.put(section, slots);
+        openSlotCounts.put(section, slots.size());
+      }
+      // shuffle first so that the stable sort breaks ties randomly
+      Collections.shuffle(sections, rand);
+      this.sections = Ordering
+          .natural()
+          .onResultOf(Functions.forMap(openSlotCounts))
+          .sortedCopy(sections);
+    }
+
+    void run() {
+      int mark = schedule.mark();
+      search(0);
+      schedule.rollback(mark);
+      for (StartAssignment assign : bestPath) {
+        schedule.assignStart(assign);
+      }
+    }
+
+    private void search(int depth) {
+      if (path.size() > bestPath.size()) {
+        bestPath = ImmutableList.copyOf(path);
+      }
+      if (depth == sections.size() || nodes >= MAX_REPAIR_NODES
+          || path.size() + (sections.size() - depth) <= bestPath.size()) {
+        return;
+      }
+      Section section = sections.get(depth);
+      List<StartAssignment> options = openSlots.get(section);
+      int length = section.getPeriodLength();
+      int tried = 0;
+      for (int i = 0; i < options.size() && tried < MAX_BRANCHING; i++) {
+        if (nodes >= MAX_REPAIR_NODES) {
+          return;
+        }
+        Collections.swap(options, i, i + rand.nextInt(options.size() - i));
+        StartAssignment option = options.get(i);
+        if (schedule.slack(option) < length) {
+          // taken by a section placed earlier in this search
+          continue;
+        }
+        int mark = schedule.mark();
+        nodes++;
+        if (schedule.assignStart(option).getResult().isValid()) {
+          tried++;
+          path.add(option);
+          search(depth + 1);
+          path.remove(path.size() - 1);
+          schedule.rollback(mark);
+          if (bestPath.size() == sections.size()) {
+            return;
+          }
+        }
+      }
+      // leave this section out
+      search(depth + 1);
+    }
+
+    /*
+     * Returns the slots in the region where the section could start without displacing anything
+     * before the search begins, drawn from the feasibility index if we have one for this program.
+     */
+    private List<StartAssignment> openSlots(Section section) {
+      List<StartAssignment> slots = Lists.newArrayList();
+      Program program = schedule.getProgram();
+      int length = section.getPeriodLength();
+      if (feasibility != null && feasibility.getProgram() == program) {
+        for (int i = 0; i < feasibility.feasibleSlotCount(section); i++) {
+          StartAssignment slot = feasibility.feasibleSlot(section, i);
+          if (region.allows(slot.getRoom(), slot.getPeriod()) && schedule.slack(slot) == length) {
+            slots.add(slot);
+          }
+        }
+      } else {
+        for (Room room : program.getRooms()) {
+          for (ClassPeriod period : program.compatiblePeriods(room)) {
+            if (region.allows(room, period) && StartAssignment.fitsInBlock(period, section)) {
+              StartAssignment slot = StartAssignment.create(period, room, section);
+              if (schedule.slack(slot) == length) {
+                slots.add(slot);
+              }
+            }
+          }
+        }
+      }
+      return slots;
+    }
+  }
+}
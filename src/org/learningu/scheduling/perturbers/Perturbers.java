@@ -4,20 +4,38 @@ import com.google.common.collect.ImmutableList;
 
 import java.util.Random;
 
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.logic.FeasibilityIndex;
+import org.learningu.scheduling.optimization.Neighborhood;
 import org.learningu.scheduling.optimization.Perturber;
 import org.learningu.scheduling.perturbers.SerialPerturbers.ScaledPerturber;
 import org.learningu.scheduling.perturbers.SerialPerturbers.SequencedPerturber;
 import org.learningu.scheduling.perturbers.SerialPerturbers.SerialPerturberImpl;
+import org.learningu.scheduling.perturbers.SerialPerturbers.SerialSamplingMode;
 import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.util.RandomStreams;
 
 public final class Perturbers {
   private Perturbers() {
   }
 
   public static Perturber<Schedule> deserialize(SequencedPerturber serial) {
+    return deserialize(serial, null, new Random());
+  }
+
+  /**
+   * Deserializes the specified perturber, using the specified feasibility index for any perturbers
+   * that sample from statically feasible slots. All the perturbers draw from {@code random}, which
+   * should be safe to share between threads, such as {@link RandomStreams#asRandom()}.
+   */
+  public static Perturber<Schedule> deserialize(
+      SequencedPerturber serial,
+      @Nullable FeasibilityIndex feasibility,
+      Random random) {
     ImmutableList.Builder<Perturber<Schedule>> sequenceBuilder = ImmutableList.builder();
     for (ScaledPerturber seq : serial.getPerturbList()) {
-      sequenceBuilder.add(deserialize(seq));
+      sequenceBuilder.add(deserialize(seq, feasibility, random));
     }
     final ImmutableList<Perturber<Schedule>> sequence = sequenceBuilder.build();
     return new Perturber<Schedule>() {
@@ -33,8 +51,28 @@ public final class Perturbers {
     };
   }
 
-  private static Perturber<Schedule> deserialize(ScaledPerturber serial) {
-    final Perturber<Schedule> delegate = deserialize(serial.getImpl());
+  /**
+   * Returns the neighborhood of moves that each reassign a single section to a slot chosen by the
+   * specified sampling mode.
+   */
+  public static Neighborhood<Schedule> singleAssignmentNeighborhood(
+      SerialSamplingMode sampling,
+      @Nullable FeasibilityIndex feasibility,
+      Random random) {
+    return new SingleAssignmentNeighborhood(
+        random,
+        SlotSampler.create(sampling, feasibility, random));
+  }
+
+  private static Perturber<Schedule> deserialize(
+      ScaledPerturber serial,
+      @Nullable FeasibilityIndex feasibility,
+      Random random) {
+    final Perturber<Schedule> delegate = deserialize(
+        serial.getImpl(),
+        serial.getSampling(),
+        feasibility,
+        random);
     final double tempScale = serial.getTemperatureScale();
     return new Perturber<Schedule>() {
       @Override
@@ -44,17 +82,27 @@ public final class Perturbers {
     };
   }
 
-  private static Perturber<Schedule> deserialize(SerialPerturberImpl serial) {
-    Random random = new Random();
+  private static Perturber<Schedule> deserialize(
+      SerialPerturberImpl serial,
+      SerialSamplingMode sampling,
+      @Nullable FeasibilityIndex feasibility,
+      Random random) {
     switch (serial) {
       case DESTRUCTIVE:
-        return new DestructivePerturber(random);
+        return new DestructivePerturber(
+            random,
+            SlotSampler.create(sampling, feasibility, random));
       case GREEDY:
-        return new GreedyPerturber(random);
+        return new GreedyPerturber(random, SlotSampler.create(sampling, feasibility, random));
       case DESTRUCTIVE_BY_ROOM:
         return new DestructiveByRoomPerturber(random);
       case SWAPPING:
-        return new SwappingPerturber(random);
+        return new SwappingPerturber(
+            random,
+            SlotSampler.create(sampling, feasibility, random),
+            feasibility);
+      case LARGE_NEIGHBORHOOD:
+        return new LargeNeighborhoodPerturber(random, feasibility);
       default:
         throw new AssertionError();
     }
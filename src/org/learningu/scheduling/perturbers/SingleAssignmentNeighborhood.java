@@ -0,0 +1,87 @@
+package org.learningu.scheduling.perturbers;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.optimization.Neighborhood;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+import org.learningu.scheduling.util.ModifiedState;
+
+/**
+ * Moves a single section, chosen uniformly from the program, to a slot proposed by a
+ * {@link SlotSampler}, removing any assignments that conflict with it. The attribute of each move
+ * is the start assignment it makes, so removed assignments -- including the section's own previous
+ * slot -- become tabu.
+ *
+ * @author lowasser
+ */
+final class SingleAssignmentNeighborhood implements Neighborhood<Schedule> {
+  private final Random rand;
+  private final SlotSampler sampler;
+
+  SingleAssignmentNeighborhood(Random rand, SlotSampler sampler) {
+    this.rand = checkNotNull(rand);
+    this.sampler = checkNotNull(sampler);
+  }
+
+  @Override
+  @Nullable
+  public Move<Schedule> sample(Schedule state) {
+    Program program = state.getProgram();
+    Section section = program.getSectionByOrdinal(rand.nextInt(program.getSections().size()));
+    StartAssignment assign = sampler.propose(state, section);
+    if (assign == null || assign.equals(state.getAssignmentsBySection().get(section))) {
+      return null;
+    }
+    return new AssignMove(assign);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("sampler", sampler).toString();
+  }
+
+  private static final class AssignMove implements Move<Schedule> {
+    private final StartAssignment assign;
+
+    AssignMove(StartAssignment assign) {
+      this.assign = assign;
+    }
+
+    @Override
+    public Object getAttribute() {
+      return assign;
+    }
+
+    /*
+     * Persistent schedules are modified through a temporary mutable copy, so that the removed
+     * assignments can be read from its journal.
+     */
+    @Override
+    public ModifiedState<Collection<Object>, Schedule> apply(Schedule state) {
+      Schedule target = state.isMutable() ? state : state.mutableCopy();
+      int mark = target.mark();
+      target.forceAssignStart(assign);
+      List<Object> removed = Lists.newArrayList();
+      for (Schedule.Change change : target.changesSince(mark)) {
+        if (!change.isAddition()) {
+          removed.add(change.getAssignment());
+        }
+      }
+      return ModifiedState.<Collection<Object>, Schedule> of(
+          removed,
+          state.isMutable() ? target : target.snapshot());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package org.learningu.scheduling.perturbers;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.logic.FeasibilityIndex;
+import org.learningu.scheduling.perturbers.SerialPerturbers.SerialSamplingMode;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+/**
+ * Proposes start assignments for sections on behalf of a perturber. Proposals that cannot be made
+ * -- because the section would overrun its time block, or has no statically feasible slot -- are
+ * signalled by returning null rather than by throwing exceptions.
+ * 
+ * <ul>
+ * <li>{@code UNIFORM} picks a room and period uniformly at random from the whole program.
+ * <li>{@code FEASIBLE} picks uniformly from the section's statically feasible slots.
+ * <li>{@code FEASIBLE_BY_SLACK} picks from the section's statically feasible slots with probability
+ * proportional to one more than the slot's {@linkplain Schedule#slack slack} in the current
+ * schedule, by rejection sampling.
+ * </ul>
+ * 
+ * <p>
+ * The feasible modes fall back to uniform sampling for schedules of a program the feasibility
+ * index does not describe.
+ * 
+ * @author lowasser
+ */
+final class SlotSampler {
+  /*
+   * The number of candidates FEASIBLE_BY_SLACK draws before giving up on a proposal. A slot with no
+   * slack is accepted with probability 1 / (length + 1), so this is plenty unless the schedule is
+   * very crowded, in which case failing is the right answer anyway.
+   */
+  private static final int MAX_SLACK_DRAWS = 16;
+
+  static SlotSampler create(
+      SerialSamplingMode mode,
+      @Nullable FeasibilityIndex feasibility,
+      Random rand) {
+    return new SlotSampler(checkNotNull(mode), feasibility, checkNotNull(rand));
+  }
+
+  private final SerialSamplingMode mode;
+  @Nullable
+  private final FeasibilityIndex feasibility;
+  private final Random rand;
+
+  private SlotSampler(
+      SerialSamplingMode mode,
+      @Nullable FeasibilityIndex feasibility,
+      Random rand) {
+    this.mode = mode;
+    this.feasibility = feasibility;
+    this.rand = rand;
+  }
+
+  /**
+   * Returns a proposed start assignment for the specified section in the specified schedule, or
+   * {@code null} if this attempt failed.
+   */
+  @Nullable
+  StartAssignment propose(Schedule schedule, Section section) {
+    if (mode == SerialSamplingMode.UNIFORM || feasibility == null
+        || feasibility.getProgram() != schedule.getProgram()) {
+      return proposeUniform(schedule.getProgram(), section);
+    } else if (mode == SerialSamplingMode.FEASIBLE) {
+      return proposeFeasible(section);
+    } else {
+      return proposeBySlack(schedule, section);
+    }
+  }
+
+  @Nullable
+  private StartAssignment proposeUniform(Program program, Section section) {
+    Room room = program.getRoomByOrdinal(rand.nextInt(program.getRooms().size()));
+    ClassPeriod period = program.getPeriodByOrdinal(rand.nextInt(program.getPeriods().size()));
+    return StartAssignment.fitsInBlock(period, section)
+        ? StartAssignment.create(period, room, section)
+        : null;
+  }
+
+  @Nullable
+  private StartAssignment proposeFeasible(Section section) {
+    int count = feasibility.feasibleSlotCount(section);
+    return (count == 0) ? null : feasibility.feasibleSlot(section, rand.nextInt(count));
+  }
+
+  @Nullable
+  private StartAssignment proposeBySlack(Schedule schedule, Section section) {
+    int count = feasibility.feasibleSlotCount(section);
+    if (count == 0) {
+      return null;
+    }
+    int length = section.getPeriodLength();
+    for (int draw = 0; draw < MAX_SLACK_DRAWS; draw++) {
+      StartAssignment candidate = feasibility.feasibleSlot(section, rand.nextInt(count));
+      if (rand.nextInt(length + 1) <= schedule.slack(candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("mode", mode).toString();
+  }
+}
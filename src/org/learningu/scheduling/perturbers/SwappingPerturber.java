@@ -0,0 +1,167 @@
+package org.learningu.scheduling.perturbers;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.logic.FeasibilityIndex;
+import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+/**
+ * A perturber that rearranges the sections already scheduled without unscheduling any of them:
+ * each move either exchanges the rooms and periods of two scheduled sections, or moves one
+ * scheduled section to a free slot proposed by a {@link SlotSampler}. Higher temperatures make more
+ * moves.
+ *
+ * <p>
+ * Each candidate move is first screened in constant time per period against the feasibility index
+ * and the schedule's room occupancy and teacher indexes, as if the sections being moved were
+ * already gone, so no intermediate schedule is built for the many candidates that fail. Only
+ * candidates that pass are applied and run through the full schedule logic, which also checks
+ * prerequisites and floating resources, and are rolled back if that rejects them.
+ *
+ * @author lowasser
+ */
+final class SwappingPerturber implements Perturber<Schedule> {
+  /*
+   * The number of moves made at temperature 1.
+   */
+  private static final int MAX_MOVES = 4;
+
+  /*
+   * The number of candidates tried for each move before giving up.
+   */
+  private static final int ATTEMPTS_PER_MOVE = 8;
+
+  private final Random rand;
+  private final SlotSampler sampler;
+  @Nullable
+  private final FeasibilityIndex feasibility;
+
+  SwappingPerturber(Random rand, SlotSampler sampler, @Nullable FeasibilityIndex feasibility) {
+    this.rand = checkNotNull(rand);
+    this.sampler = checkNotNull(sampler);
+    this.feasibility = feasibility;
+  }
+
+  @Override
+  public Schedule perturb(Schedule initial, double temperature) {
+    // moves never unschedule a section, so this stays the set of scheduled sections
+    List<Section> scheduled = ImmutableList.copyOf(initial.getScheduledSections());
+    if (scheduled.isEmpty()) {
+      return initial;
+    }
+    Schedule current = initial.isMutable() ? initial : initial.mutableCopy();
+    int moves = 1 + (int) (Math.min(1.0, temperature) * MAX_MOVES);
+    int made = 0;
+    for (int attempt = 0; made < moves && attempt < moves * ATTEMPTS_PER_MOVE; attempt++) {
+      StartAssignment a = current.getAssignmentsBySection().get(
+          scheduled.get(rand.nextInt(scheduled.size())));
+      boolean moved;
+      if (scheduled.size() == 1 || rand.nextBoolean()) {
+        moved = tryMove(current, a);
+      } else {
+        StartAssignment b = current.getAssignmentsBySection().get(
+            scheduled.get(rand.nextInt(scheduled.size())));
+        moved = trySwap(current, a, b);
+      }
+      if (moved) {
+        made++;
+      }
+    }
+    return initial.isMutable() ? current : current.snapshot();
+  }
+
+  /*
+   * Moves the assignment's section to a proposed slot, if it is free apart from the section itself.
+   */
+  private boolean tryMove(Schedule schedule, StartAssignment assign) {
+    StartAssignment target = sampler.propose(schedule, assign.getSection());
+    if (target == null || target.equals(assign) || !isStaticallyFeasible(target)
+        || !schedule.isFreeExcept(target, assign.getSection(), null)) {
+      return false;
+    }
+    int mark = schedule.mark();
+    schedule.removeStartingAt(assign.getPeriod(), assign.getRoom());
+    if (!schedule.assignStart(target).getResult().isValid()) {
+      schedule.rollback(mark);
+      return false;
+    }
+    return true;
+  }
+
+  /*
+   * Exchanges the rooms and periods of the two assignments' sections.
+   */
+  private boolean trySwap(Schedule schedule, StartAssignment a, StartAssignment b) {
+    Section aSection = a.getSection();
+    Section bSection = b.getSection();
+    if (aSection.equals(bSection) || !StartAssignment.fitsInBlock(b.getPeriod(), aSection)
+        || !StartAssignment.fitsInBlock(a.getPeriod(), bSection)) {
+      return false;
+    }
+    StartAssignment newA = StartAssignment.create(b.getPeriod(), b.getRoom(), aSection);
+    StartAssignment newB = StartAssignment.create(a.getPeriod(), a.getRoom(), bSection);
+    if (!isStaticallyFeasible(newA) || !isStaticallyFeasible(newB)
+        || !schedule.isFreeExcept(newA, aSection, bSection)
+        || !schedule.isFreeExcept(newB, aSection, bSection)
+        || conflict(schedule, newA, newB)) {
+      return false;
+    }
+    int mark = schedule.mark();
+    schedule.removeStartingAt(a.getPeriod(), a.getRoom());
+    schedule.removeStartingAt(b.getPeriod(), b.getRoom());
+    if (!schedule.assignStart(newA).getResult().isValid()
+        || !schedule.assignStart(newB).getResult().isValid()) {
+      schedule.rollback(mark);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isStaticallyFeasible(StartAssignment assign) {
+    return feasibility == null || !feasibility.covers(assign) || feasibility.isFeasible(assign);
+  }
+
+  /*
+   * Returns whether the two new assignments would clash with each other, which the indexes of the
+   * schedule cannot tell us: that is, whether they overlap in time and share a room or a teacher.
+   */
+  private static boolean conflict(Schedule schedule, StartAssignment x, StartAssignment y) {
+    if (!x.getTimeBlock().equals(y.getTimeBlock())) {
+      return false;
+    }
+    int xStart = x.getPeriod().getIndex();
+    int yStart = y.getPeriod().getIndex();
+    if (xStart + x.getSection().getPeriodLength() <= yStart
+        || yStart + y.getSection().getPeriodLength() <= xStart) {
+      return false;
+    }
+    if (x.getRoom().equals(y.getRoom())) {
+      return true;
+    }
+    Set<Teacher> yTeachers = schedule.getProgram().teachersFor(y.getSection());
+    for (Teacher teacher : schedule.getProgram().teachersFor(x.getSection())) {
+      if (yTeachers.contains(teacher)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("sampler", sampler).toString();
+  }
+}
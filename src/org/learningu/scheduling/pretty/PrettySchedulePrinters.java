@@ -1,6 +1,5 @@
 package org.learningu.scheduling.pretty;
 
-import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -29,11 +28,10 @@ public class PrettySchedulePrinters {
     for (Room room : program.getRooms()) {
       builder.add(Csv.newRowBuilder().add(room.getName()).build());
       for (ClassPeriod period : Ordering.natural().sortedCopy(program.compatiblePeriods(room))) {
-        Optional<PresentAssignment> occurring = schedule.occurringAt(period, room);
+        Section occupant = schedule.occupantAt(period, room);
         Csv.RowBuilder rowBuilder = Csv.newRowBuilder();
         rowBuilder.addBlank().add(period.getShortDescription());
-        rowBuilder.add(occurring.isPresent() ? occurring.get().getSection().getTitle()
-            : "UNASSIGNED");
+        rowBuilder.add((occupant != null) ? occupant.getTitle() : "UNASSIGNED");
         builder.add(rowBuilder.build());
       }
     }
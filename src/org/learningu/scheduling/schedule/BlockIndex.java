@@ -0,0 +1,276 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Resource;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.TimeBlock;
+import org.learningu.scheduling.util.bst.BstMap;
+
+/**
+ * Dense indexes of the assignments made during a single time block of a schedule. Block indexes
+ * are mutable, but are shared copy-on-write between persistent schedules, so a modification only
+ * copies the indexes of the one block it touches.
+ * 
+ * <p>Each room and teacher cell records one of the sections occupying it, and how many do. There
+ * is more than one only when the schedule logic in use allows rooms or teachers to be double-booked, or
+ * when a schedule was {@linkplain Schedule.Factory#createTrusted built without validation}.
+ * 
+ * @author lowasser
+ */
+final class BlockIndex {
+  static final int EMPTY = -1;
+
+  static BlockIndex create(Program program, TimeBlock block) {
+    int periodCount = block.getPeriods().size();
+    checkArgument(
+        periodCount <= Long.SIZE,
+        "Time block %s has %s periods, but at most %s are supported",
+        block,
+        periodCount,
+        Long.SIZE);
+    int[] roomCells = new int[program.getRooms().size() * periodCount];
+    Arrays.fill(roomCells, EMPTY);
+    int[] teacherCells = new int[program.getTeachers().size() * periodCount];
+    Arrays.fill(teacherCells, EMPTY);
+    return new BlockIndex(
+        program,
+        block,
+        roomCells,
+        new int[roomCells.length],
+        new long[program.getTeachers().size()],
+        teacherCells,
+        new int[teacherCells.length],
+        new int[program.getResources().size() * periodCount]);
+  }
+
+  private final Program program;
+
+  private final TimeBlock block;
+
+  private final int periodCount;
+
+  /*
+   * The ordinal of the section in each room during each period of the block, or EMPTY, laid out
+   * room-major.
+   */
+  private final int[] roomCells;
+
+  /*
+   * The number of sections in each room during each period of the block, laid out like roomCells.
+   */
+  private final int[] roomCounts;
+
+  /*
+   * For each teacher, a bitset of the periods of this block in which they are teaching.
+   */
+  private final long[] teacherBusy;
+
+  /*
+   * The ordinal of the section each teacher is teaching during each period of the block, or EMPTY,
+   * laid out teacher-major.
+   */
+  private final int[] teacherCells;
+
+  /*
+   * The number of sections each teacher is teaching during each period of the block, laid out like
+   * teacherCells.
+   */
+  private final int[] teacherCounts;
+
+  /*
+   * The number of sections using a floating copy of each resource -- that is, requiring the
+   * resource but scheduled in a room without it -- during each period of the block, laid out
+   * resource-major.
+   */
+  private final int[] floatingDemand;
+
+  private BlockIndex(
+      Program program,
+      TimeBlock block,
+      int[] roomCells,
+      int[] roomCounts,
+      long[] teacherBusy,
+      int[] teacherCells,
+      int[] teacherCounts,
+      int[] floatingDemand) {
+    this.program = program;
+    this.block = block;
+    this.periodCount = block.getPeriods().size();
+    this.roomCells = roomCells;
+    this.roomCounts = roomCounts;
+    this.teacherBusy = teacherBusy;
+    this.teacherCells = teacherCells;
+    this.teacherCounts = teacherCounts;
+    this.floatingDemand = floatingDemand;
+  }
+
+  BlockIndex copy() {
+    return new BlockIndex(
+        program,
+        block,
+        roomCells.clone(),
+        roomCounts.clone(),
+        teacherBusy.clone(),
+        teacherCells.clone(),
+        teacherCounts.clone(),
+        floatingDemand.clone());
+  }
+
+  /**
+   * Returns the ordinal of the section in the specified room during the specified period of this
+   * block, or {@link #EMPTY}.
+   */
+  int sectionInRoom(int roomOrdinal, int periodIndex) {
+    return roomCells[roomOrdinal * periodCount + periodIndex];
+  }
+
+  /**
+   * Returns the number of sections in the specified room during the specified period of this block.
+   */
+  int roomCount(int roomOrdinal, int periodIndex) {
+    return roomCounts[roomOrdinal * periodCount + periodIndex];
+  }
+
+  /**
+   * Returns the bitset of periods of this block in which the specified teacher is teaching.
+   */
+  long teacherBusyPeriods(int teacherOrdinal) {
+    return teacherBusy[teacherOrdinal];
+  }
+
+  /**
+   * Returns the ordinal of the section the specified teacher is teaching during the specified
+   * period of this block, or {@link #EMPTY}.
+   */
+  int sectionTaughtBy(int teacherOrdinal, int periodIndex) {
+    return teacherCells[teacherOrdinal * periodCount + periodIndex];
+  }
+
+  /**
+   * Returns the number of sections the specified teacher is teaching during the specified period of
+   * this block.
+   */
+  int teacherCount(int teacherOrdinal, int periodIndex) {
+    return teacherCounts[teacherOrdinal * periodCount + periodIndex];
+  }
+
+  /**
+   * Returns the number of sections using a floating copy of the specified resource during the
+   * specified period of this block.
+   */
+  int floatingDemand(int resourceOrdinal, int periodIndex) {
+    return floatingDemand[resourceOrdinal * periodCount + periodIndex];
+  }
+
+  static long periodMask(StartAssignment assign) {
+    int length = assign.getSection().getPeriodLength();
+    long lengthMask = (length == Long.SIZE) ? -1L : (1L << length) - 1;
+    return lengthMask << assign.getPeriod().getIndex();
+  }
+
+  void add(StartAssignment assign) {
+    int sectionOrdinal = assign.getSection().getOrdinal();
+    int start = assign.getPeriod().getIndex();
+    int end = start + assign.getSection().getPeriodLength();
+    int roomBase = assign.getRoom().getOrdinal() * periodCount;
+    for (int i = roomBase + start; i < roomBase + end; i++) {
+      roomCells[i] = sectionOrdinal;
+      roomCounts[i]++;
+    }
+    long mask = periodMask(assign);
+    for (Teacher teacher : program.teachersFor(assign.getSection())) {
+      int t = teacher.getOrdinal();
+      teacherBusy[t] |= mask;
+      int teacherBase = t * periodCount;
+      for (int i = teacherBase + start; i < teacherBase + end; i++) {
+        teacherCells[i] = sectionOrdinal;
+        teacherCounts[i]++;
+      }
+    }
+    updateFloatingDemand(assign, start, end, 1);
+  }
+
+  private void updateFloatingDemand(StartAssignment assign, int start, int end, int delta) {
+    Set<Resource> roomResources = program.roomResources(assign.getRoom());
+    for (Resource resource : program.resourceRequirements(assign.getSection())) {
+      if (!roomResources.contains(resource)) {
+        int resourceBase = resource.getOrdinal() * periodCount;
+        for (int i = resourceBase + start; i < resourceBase + end; i++) {
+          floatingDemand[i] += delta;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the specified assignment. {@code roomStarts} and {@code assignments} must be the
+   * starting times in the assignment's room and the assignments of the schedule once it is
+   * removed: where another section still occupies one of its cells, they are used to find it.
+   */
+  void remove(
+      StartAssignment assign,
+      BstMap<ClassPeriod, Section> roomStarts,
+      BstMap<Section, StartAssignment> assignments) {
+    int sectionOrdinal = assign.getSection().getOrdinal();
+    int start = assign.getPeriod().getIndex();
+    int end = start + assign.getSection().getPeriodLength();
+    int roomBase = assign.getRoom().getOrdinal() * periodCount;
+    for (int i = start; i < end; i++) {
+      int cell = roomBase + i;
+      if (--roomCounts[cell] == 0) {
+        roomCells[cell] = EMPTY;
+      } else if (roomCells[cell] == sectionOrdinal) {
+        roomCells[cell] = remainingInRoom(roomStarts, i);
+      }
+    }
+    for (Teacher teacher : program.teachersFor(assign.getSection())) {
+      int t = teacher.getOrdinal();
+      int teacherBase = t * periodCount;
+      for (int i = start; i < end; i++) {
+        int cell = teacherBase + i;
+        if (--teacherCounts[cell] == 0) {
+          teacherCells[cell] = EMPTY;
+          teacherBusy[t] &= ~(1L << i);
+        } else if (teacherCells[cell] == sectionOrdinal) {
+          teacherCells[cell] = remainingTaughtBy(teacher, assignments, i);
+        }
+      }
+    }
+    updateFloatingDemand(assign, start, end, -1);
+  }
+
+  private int remainingInRoom(BstMap<ClassPeriod, Section> roomStarts, int periodIndex) {
+    List<ClassPeriod> periods = block.getPeriods();
+    for (int j = periodIndex; j >= 0; j--) {
+      Section section = roomStarts.get(periods.get(j));
+      if (section != null && j + section.getPeriodLength() > periodIndex) {
+        return section.getOrdinal();
+      }
+    }
+    throw new IllegalStateException("No remaining section found in a room cell of " + block);
+  }
+
+  private int remainingTaughtBy(
+      Teacher teacher,
+      BstMap<Section, StartAssignment> assignments,
+      int periodIndex) {
+    for (Section section : program.getSectionsForTeacher(teacher)) {
+      StartAssignment assign = assignments.get(section);
+      if (assign != null && assign.getTimeBlock().equals(block)) {
+        int start = assign.getPeriod().getIndex();
+        if (start <= periodIndex && periodIndex < start + section.getPeriodLength()) {
+          return section.getOrdinal();
+        }
+      }
+    }
+    throw new IllegalStateException("No remaining section found in a teacher cell of " + block);
+  }
+}
@@ -0,0 +1,154 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.flags.Flag;
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.logic.FeasibilityIndex;
+
+/**
+ * Builds an initial schedule in a single greedy pass, so that optimization starts from a full
+ * schedule instead of spending its first minutes filling an empty one.
+ *
+ * <p>
+ * Sections are placed most constrained first: those with the fewest statically feasible slots --
+ * which accounts for teacher availability, binding resources, length and room capacity -- then
+ * those whose teachers are available the fewest periods, then the longest and the largest. Each
+ * section goes in the open feasible slot the schedule logic accepts whose room fits it most
+ * tightly, preferring the periods with the fewest classes so far.
+ *
+ * @author lowasser
+ */
+public final class ConstructiveScheduler {
+  private final Schedule.Factory factory;
+
+  private final FeasibilityIndex feasibility;
+
+  private final Logger logger;
+
+  @Inject(optional = true)
+  @Flag(
+      name = "emptyInitialSchedule",
+      description = "Whether to start from an empty schedule instead of building one when no "
+          + "initial schedule file is given",
+      optional = true)
+  private boolean emptyInitialSchedule = false;
+
+  @Inject
+  ConstructiveScheduler(Schedule.Factory factory, FeasibilityIndex feasibility, Logger logger) {
+    this.factory = checkNotNull(factory);
+    this.feasibility = checkNotNull(feasibility);
+    this.logger = checkNotNull(logger);
+  }
+
+  /**
+   * Returns the specified schedule if it has any assignments, and otherwise a newly constructed
+   * schedule, unless constructing initial schedules is disabled.
+   */
+  public Schedule completeIfEmpty(Schedule schedule) {
+    if (emptyInitialSchedule || !schedule.getStartAssignments().isEmpty()) {
+      return schedule;
+    }
+    return construct();
+  }
+
+  /**
+   * Returns a new schedule with as many sections placed as a single greedy pass can manage.
+   */
+  public Schedule construct() {
+    Stopwatch stopwatch = new Stopwatch().start();
+    Schedule schedule = factory.create().mutableCopy();
+    final Program program = schedule.getProgram();
+    int[] periodLoad = new int[program.getPeriods().size()];
+
+    List<Section> sections = Lists.newArrayList(program.getSections());
+    Collections.sort(sections, new Comparator<Section>() {
+      @Override
+      public int compare(Section a, Section b) {
+        return ComparisonChain
+            .start()
+            .compare(feasibility.feasibleSlotCount(a), feasibility.feasibleSlotCount(b))
+            .compare(program.compatiblePeriods(a).size(), program.compatiblePeriods(b).size())
+            .compare(b.getPeriodLength(), a.getPeriodLength())
+            .compare(b.getEstimatedClassSize(), a.getEstimatedClassSize())
+            .result();
+      }
+    });
+
+    int placed = 0;
+    for (Section section : sections) {
+      StartAssignment assign = place(schedule, section, periodLoad);
+      if (assign != null) {
+        for (ClassPeriod period : assign.getPresentPeriods()) {
+          periodLoad[period.getOrdinal()]++;
+        }
+        placed++;
+      }
+      schedule.commit();
+    }
+    logger.log(
+        Level.INFO,
+        "Constructed initial schedule with {0} of {1} sections in {2} ms",
+        new Object[] { placed, sections.size(), stopwatch.elapsedMillis() });
+    return schedule.snapshot();
+  }
+
+  /*
+   * Assigns the section to its best open feasible slot that the schedule accepts, returning the
+   * assignment made, or null if none was. All the section's feasible slots are screened in one
+   * batch, so that its teachers' busy periods are only looked up once per time block.
+   */
+  @Nullable
+  private StartAssignment place(Schedule schedule, final Section section, final int[] periodLoad) {
+    List<StartAssignment> slots =
+        Lists.newArrayListWithCapacity(feasibility.feasibleSlotCount(section));
+    for (int i = 0; i < feasibility.feasibleSlotCount(section); i++) {
+      slots.add(feasibility.feasibleSlot(section, i));
+    }
+    Screening screening = schedule.screen(slots);
+    BitSet assignable = screening.assignable();
+    if (assignable.isEmpty()) {
+      return null;
+    }
+    List<StartAssignment> open = Lists.newArrayListWithCapacity(assignable.cardinality());
+    for (int i = assignable.nextSetBit(0); i >= 0; i = assignable.nextSetBit(i + 1)) {
+      open.add(screening.getCandidate(i));
+    }
+    StartAssignment best = Collections.min(open, new Comparator<StartAssignment>() {
+      @Override
+      public int compare(StartAssignment a, StartAssignment b) {
+        return ComparisonChain
+            .start()
+            .compare(waste(a), waste(b))
+            .compare(load(a), load(b))
+            .result();
+      }
+
+      private int waste(StartAssignment assign) {
+        return Math.abs(assign.getRoom().getCapacity() - section.getEstimatedClassSize());
+      }
+
+      private int load(StartAssignment assign) {
+        return periodLoad[assign.getPeriod().getOrdinal()];
+      }
+    });
+    schedule.assignStart(best);
+    return best;
+  }
+}
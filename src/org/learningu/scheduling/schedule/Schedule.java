@@ -1,36 +1,72 @@
 package org.learningu.scheduling.schedule;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Maps.EntryTransformer;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Course;
 import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Resource;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.TimeBlock;
 import org.learningu.scheduling.logic.GlobalConflict;
 import org.learningu.scheduling.logic.ScheduleLogic;
 import org.learningu.scheduling.logic.ScheduleValidator;
 import org.learningu.scheduling.util.ModifiedState;
 import org.learningu.scheduling.util.bst.BstMap;
 
+/**
+ * An assignment of sections to rooms and periods in a program.
+ * 
+ * <p>
+ * Schedules are persistent by default: every modification returns a new {@code Schedule} sharing
+ * structure with the original, which is left untouched. A {@linkplain #mutableCopy() mutable}
+ * schedule instead applies modifications in place, journaling each one so that it can be
+ * {@linkplain #rollback(int) rolled back}. Mutable schedules are not thread-safe, and should be
+ * confined to a single optimizer thread; use {@link #snapshot()} to hand their state to anyone
+ * else.
+ * 
+ * @author lowasser
+ */
 public final class Schedule {
   public static final class Factory {
     private final Program program;
@@ -46,10 +82,16 @@ public final class Schedule {
       this.validatorProvider = validatorProvider;
     }
 
+    Program getProgram() {
+      return program;
+    }
+
     private Schedule create(
         BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable,
-        BstMap<Section, StartAssignment> assignments) {
-      return new Schedule(this, startingTimeTable, assignments);
+        BstMap<Section, StartAssignment> assignments,
+        BstMap<Course, ClassPeriod> earliestEnds,
+        BlockIndex[] blocks) {
+      return new Schedule(this, startingTimeTable, assignments, earliestEnds, blocks, null);
     }
 
     public Schedule create() {
@@ -57,32 +99,405 @@ public final class Schedule {
       for (Room r : program.getRooms()) {
         roomMap = roomMap.insert(r, BstMap.<ClassPeriod, Section> create());
       }
-      return new Schedule(this, roomMap, BstMap.<Section, StartAssignment> create());
+      BlockIndex[] blocks = new BlockIndex[program.getTimeBlocks().size()];
+      for (TimeBlock block : program.getTimeBlocks()) {
+        blocks[block.getOrdinal()] = BlockIndex.create(program, block);
+      }
+      return new Schedule(
+          this,
+          roomMap,
+          BstMap.<Section, StartAssignment> create(),
+          BstMap.<Course, ClassPeriod> create(COURSE_ORDER),
+          blocks,
+          null);
+    }
+
+    /**
+     * Returns a schedule with the specified assignments, without validating them: the indexes are
+     * built directly, in time linear in the number of assignments apart from sorting them. The
+     * assignments must not schedule any section twice, or start two sections in the same room and
+     * period, but may otherwise conflict; {@linkplain Schedule#audit audit} the schedule to find
+     * out.
+     */
+    public Schedule createTrusted(Iterable<StartAssignment> assigns) {
+      List<StartAssignment> bySection = Lists.newArrayList(assigns);
+      Collections.sort(bySection, BY_SECTION);
+      List<Entry<Section, StartAssignment>> assignmentEntries =
+          Lists.newArrayListWithCapacity(bySection.size());
+      Map<Course, ClassPeriod> earliestEnds = Maps.newHashMap();
+      BlockIndex[] blocks = new BlockIndex[program.getTimeBlocks().size()];
+      for (TimeBlock block : program.getTimeBlocks()) {
+        blocks[block.getOrdinal()] = BlockIndex.create(program, block);
+      }
+      for (StartAssignment assign : bySection) {
+        assignmentEntries.add(Maps.immutableEntry(assign.getSection(), assign));
+        ClassPeriod earliest = earliestEnds.get(assign.getCourse());
+        if (earliest == null || assign.getLastPeriod().compareTo(earliest) < 0) {
+          earliestEnds.put(assign.getCourse(), assign.getLastPeriod());
+        }
+        blocks[assign.getTimeBlock().getOrdinal()].add(assign);
+      }
+
+      List<StartAssignment> byRoom = Lists.newArrayList(bySection);
+      Collections.sort(byRoom, BY_ROOM_AND_PERIOD);
+      List<Entry<Room, BstMap<ClassPeriod, Section>>> roomEntries = Lists.newArrayList();
+      int next = 0;
+      for (Room room : Ordering.<Room> natural().sortedCopy(program.getRooms())) {
+        List<Entry<ClassPeriod, Section>> periodEntries = Lists.newArrayList();
+        for (; next < byRoom.size() && byRoom.get(next).getRoom().equals(room); next++) {
+          StartAssignment assign = byRoom.get(next);
+          periodEntries.add(Maps.immutableEntry(assign.getPeriod(), assign.getSection()));
+        }
+        roomEntries.add(Maps.immutableEntry(
+            room,
+            BstMap.copyOfSorted(Ordering.<ClassPeriod> natural(), periodEntries)));
+      }
+      checkArgument(next == byRoom.size(), "Assignments to rooms not in the program");
+
+      return create(
+          BstMap.copyOfSorted(Ordering.<Room> natural(), roomEntries),
+          BstMap.copyOfSorted(Ordering.<Section> natural(), assignmentEntries),
+          BstMap.copyOfSorted(COURSE_ORDER, ImmutableList.copyOf(
+              ImmutableSortedMap.copyOf(earliestEnds, COURSE_ORDER).entrySet())),
+          blocks);
+    }
+  }
+
+  /**
+   * A single assignment added to or removed from a mutable schedule.
+   */
+  public static final class Change {
+    private final boolean added;
+    private final StartAssignment assignment;
+
+    Change(boolean added, StartAssignment assignment) {
+      this.added = added;
+      this.assignment = checkNotNull(assignment);
+    }
+
+    public boolean isAddition() {
+      return added;
+    }
+
+    public StartAssignment getAssignment() {
+      return assignment;
+    }
+
+    @Override
+    public String toString() {
+      return (added ? "+" : "-") + assignment;
     }
   }
 
+  /**
+   * A single in-place modification of a mutable schedule, with enough information to undo it.
+   */
+  private static final class JournalEntry {
+    private final BstMap<Room, BstMap<ClassPeriod, Section>> previousTimeTable;
+    private final BstMap<Section, StartAssignment> previousAssignments;
+    private final BstMap<Course, ClassPeriod> previousEarliestEnds;
+    private final Change change;
+
+    JournalEntry(
+        BstMap<Room, BstMap<ClassPeriod, Section>> previousTimeTable,
+        BstMap<Section, StartAssignment> previousAssignments,
+        BstMap<Course, ClassPeriod> previousEarliestEnds,
+        Change change) {
+      this.previousTimeTable = previousTimeTable;
+      this.previousAssignments = previousAssignments;
+      this.previousEarliestEnds = previousEarliestEnds;
+      this.change = change;
+    }
+  }
+
+  private static final Function<JournalEntry, Change> GET_CHANGE =
+      new Function<JournalEntry, Change>() {
+        @Override
+        public Change apply(JournalEntry entry) {
+          return entry.change;
+        }
+      };
+
+  private static final Comparator<StartAssignment> BY_SECTION = new Comparator<StartAssignment>() {
+    @Override
+    public int compare(StartAssignment a, StartAssignment b) {
+      return a.getSection().compareTo(b.getSection());
+    }
+  };
+
+  private static final Comparator<StartAssignment> BY_ROOM_AND_PERIOD =
+      new Comparator<StartAssignment>() {
+        @Override
+        public int compare(StartAssignment a, StartAssignment b) {
+          return ComparisonChain
+              .start()
+              .compare(a.getRoom(), b.getRoom())
+              .compare(a.getPeriod(), b.getPeriod())
+              .result();
+        }
+      };
+
+  private static final Comparator<Course> COURSE_ORDER = new Comparator<Course>() {
+    @Override
+    public int compare(Course a, Course b) {
+      return Ints.compare(a.getId(), b.getId());
+    }
+  };
+
+  /*
+   * Batches of candidates larger than this are split into chunks of this size to be screened in
+   * parallel.
+   */
+  static final int SCREENING_CHUNK = 256;
+
   private final Factory factory;
 
-  private final BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable;
+  /*
+   * These are only ever reassigned in mutable schedules. Since the maps themselves are persistent,
+   * undoing a modification is just a matter of restoring the old roots, and taking a snapshot
+   * doesn't copy anything.
+   */
+  private BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable;
+
+  private BstMap<Section, StartAssignment> assignments;
+
+  /*
+   * The last period of the scheduled section of each course that ends first, for courses with any
+   * scheduled sections.
+   */
+  private BstMap<Course, ClassPeriod> earliestEnds;
+
+  /*
+   * The dense indexes of each time block, by ordinal. Persistent schedules share these
+   * copy-on-write; a mutable schedule tracks which ones it has copied, and so may modify in place.
+   */
+  private final BlockIndex[] blocks;
 
-  private final BstMap<Section, StartAssignment> assignments;
+  @Nullable
+  private final boolean[] ownedBlocks;
 
-  Schedule(
+  /**
+   * The undo log of a mutable schedule, or {@code null} if this schedule is persistent.
+   */
+  @Nullable
+  private final List<JournalEntry> journal;
+
+  private Schedule(
       Factory factory,
       BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable,
-      BstMap<Section, StartAssignment> assignments) {
+      BstMap<Section, StartAssignment> assignments,
+      BstMap<Course, ClassPeriod> earliestEnds,
+      BlockIndex[] blocks,
+      @Nullable List<JournalEntry> journal) {
     this.startingTimeTable = checkNotNull(startingTimeTable);
     this.factory = checkNotNull(factory);
     this.assignments = checkNotNull(assignments);
+    this.earliestEnds = checkNotNull(earliestEnds);
+    this.blocks = checkNotNull(blocks);
+    this.journal = journal;
+    this.ownedBlocks = (journal == null) ? null : new boolean[blocks.length];
+  }
+
+  /**
+   * Returns a new mutable schedule with the same assignments as this one.
+   */
+  public Schedule mutableCopy() {
+    if (isMutable()) {
+      // the copy shares our block indexes, so we must copy them before modifying them again
+      Arrays.fill(ownedBlocks, false);
+    }
+    return new Schedule(
+        factory,
+        startingTimeTable,
+        assignments,
+        earliestEnds,
+        blocks.clone(),
+        Lists.<JournalEntry> newArrayList());
+  }
+
+  public boolean isMutable() {
+    return journal != null;
+  }
+
+  /**
+   * Returns a persistent schedule with the same assignments as this one. If this schedule is
+   * already persistent, returns this schedule.
+   */
+  public Schedule snapshot() {
+    if (!isMutable()) {
+      return this;
+    }
+    // the snapshot shares our block indexes, so we must copy them before modifying them again
+    Arrays.fill(ownedBlocks, false);
+    return factory.create(startingTimeTable, assignments, earliestEnds, blocks.clone());
+  }
+
+  /**
+   * Returns a token identifying the current state of this mutable schedule, which may be passed to
+   * {@link #rollback(int)} so long as no intervening {@link #commit()} occurs.
+   */
+  public int mark() {
+    checkState(isMutable(), "Only mutable schedules may be rolled back");
+    return journal.size();
+  }
+
+  /**
+   * Undoes every modification made to this mutable schedule since the specified mark.
+   */
+  public void rollback(int mark) {
+    checkState(isMutable(), "Only mutable schedules may be rolled back");
+    checkArgument(mark >= 0 && mark <= journal.size(), "Invalid mark %s", mark);
+    while (journal.size() > mark) {
+      JournalEntry entry = journal.remove(journal.size() - 1);
+      startingTimeTable = entry.previousTimeTable;
+      assignments = entry.previousAssignments;
+      earliestEnds = entry.previousEarliestEnds;
+      StartAssignment assign = entry.change.getAssignment();
+      updateBlock(writableBlock(assign.getTimeBlock()), !entry.change.isAddition(), assign);
+    }
+  }
+
+  /**
+   * Returns the modifications made to this mutable schedule since the specified mark, in the order
+   * they were made. The returned list is a view, which is only valid until the next modification,
+   * rollback or commit.
+   */
+  public List<Change> changesSince(int mark) {
+    checkState(isMutable(), "Only mutable schedules keep track of their changes");
+    checkArgument(mark >= 0 && mark <= journal.size(), "Invalid mark %s", mark);
+    return Lists.transform(journal.subList(mark, journal.size()), GET_CHANGE);
+  }
+
+  /**
+   * Undoes every modification made to this mutable schedule since the last commit.
+   */
+  public void rollback() {
+    rollback(0);
+  }
+
+  /**
+   * Discards the undo log of this mutable schedule, so that the current state can no longer be
+   * rolled back.
+   */
+  public void commit() {
+    checkState(isMutable(), "Only mutable schedules may be committed");
+    journal.clear();
   }
 
+  /**
+   * Returns whether the schedule logic accepts every assignment in this schedule. Equivalent to
+   * {@code audit().isClean()}.
+   */
   public boolean isCompletelyValid() {
-    Schedule base = factory.create();
-    for (StartAssignment assign : getStartAssignments()) {
-      ModifiedState<ScheduleValidator, Schedule> modifiedState = base.assignStart(assign);
-      assert modifiedState.getResult().isValid();
+    return audit().isClean();
+  }
+
+  /**
+   * Checks every assignment in this schedule against the rest of the schedule, reporting those the
+   * schedule logic rejects. This does not rebuild the schedule: each assignment is taken out of a
+   * scratch copy, validated, and put back.
+   */
+  public ScheduleAudit audit() {
+    List<List<StartAssignment>> groups = auditGroups();
+    Map<StartAssignment, ScheduleValidator> conflicts = Maps.newHashMap();
+    for (List<StartAssignment> group : groups) {
+      conflicts.putAll(audit(group));
     }
-    return true;
+    return finishAudit(groups, conflicts);
+  }
+
+  /**
+   * Audits this schedule as {@link #audit()} does, checking the assignments starting in each period
+   * in parallel on the specified executor. Since this waits for the executor, it must not be called
+   * while the executor's threads may all be busy, such as while it is running the optimizer's
+   * workers.
+   */
+  public ScheduleAudit audit(ExecutorService service) {
+    /*
+     * Copying a mutable schedule gives up its ownership of its block indexes, so the tasks must not
+     * copy this one concurrently; they all copy a persistent snapshot instead.
+     */
+    final Schedule persistent = snapshot();
+    List<List<StartAssignment>> groups = persistent.auditGroups();
+    List<Callable<Map<StartAssignment, ScheduleValidator>>> tasks = Lists.newArrayList();
+    for (final List<StartAssignment> group : groups) {
+      tasks.add(new Callable<Map<StartAssignment, ScheduleValidator>>() {
+        @Override
+        public Map<StartAssignment, ScheduleValidator> call() {
+          return persistent.audit(group);
+        }
+      });
+    }
+    Map<StartAssignment, ScheduleValidator> conflicts = Maps.newHashMap();
+    try {
+      for (Future<Map<StartAssignment, ScheduleValidator>> future : service.invokeAll(tasks)) {
+        conflicts.putAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    return persistent.finishAudit(groups, conflicts);
+  }
+
+  /*
+   * Returns the assignments of this schedule grouped by start period, omitting empty groups.
+   */
+  private List<List<StartAssignment>> auditGroups() {
+    List<List<StartAssignment>> byPeriod = Lists.newArrayList();
+    for (int i = 0; i < getProgram().getPeriods().size(); i++) {
+      byPeriod.add(Lists.<StartAssignment> newArrayList());
+    }
+    for (StartAssignment assign : assignments.values()) {
+      byPeriod.get(assign.getPeriod().getOrdinal()).add(assign);
+    }
+    List<List<StartAssignment>> groups = Lists.newArrayList();
+    for (List<StartAssignment> group : byPeriod) {
+      if (!group.isEmpty()) {
+        groups.add(group);
+      }
+    }
+    return groups;
+  }
+
+  /*
+   * Validates each of the specified assignments of this schedule against a scratch copy of the
+   * schedule without it. Only assignments that fail the cheap fail-fast validation are diagnosed.
+   */
+  private Map<StartAssignment, ScheduleValidator> audit(List<StartAssignment> group) {
+    Map<StartAssignment, ScheduleValidator> conflicts = Maps.newLinkedHashMap();
+    Schedule scratch = mutableCopy();
+    for (StartAssignment assign : group) {
+      int mark = scratch.mark();
+      scratch.removeStartingAt(assign.getPeriod(), assign.getRoom());
+      ScheduleValidator validator = ScheduleValidator.failFast();
+      scratch.validate(validator, assign);
+      if (!validator.isValid()) {
+        conflicts.put(assign, scratch.diagnose(assign));
+      }
+      scratch.rollback(mark);
+    }
+    return conflicts;
+  }
+
+  /*
+   * Orders the conflicts found by start period.
+   */
+  private ScheduleAudit finishAudit(
+      List<List<StartAssignment>> groups,
+      Map<StartAssignment, ScheduleValidator> conflicts) {
+    ImmutableMap.Builder<StartAssignment, ScheduleValidator> ordered = ImmutableMap.builder();
+    for (List<StartAssignment> group : groups) {
+      for (StartAssignment assign : group) {
+        ScheduleValidator validator = conflicts.get(assign);
+        if (validator != null) {
+          ordered.put(assign, validator);
+        }
+      }
+    }
+    return new ScheduleAudit(assignments.size(), ordered.build());
   }
 
   public Program getProgram() {
@@ -97,6 +512,24 @@ public final class Schedule {
     return assignments;
   }
 
+  /**
+   * Returns the assignment of the specified section, or {@code null} if it is not scheduled. This
+   * takes logarithmic time and allocates nothing.
+   */
+  @Nullable
+  public StartAssignment assignmentOf(Section section) {
+    return assignments.get(section);
+  }
+
+  /**
+   * Returns the last period of whichever scheduled section of the specified course ends first, or
+   * {@code null} if no section of the course is scheduled. This takes logarithmic time.
+   */
+  @Nullable
+  public ClassPeriod earliestEnd(Course course) {
+    return earliestEnds.get(course);
+  }
+
   public final Map<ClassPeriod, StartAssignment> startingIn(final Room room) {
     return Maps.transformEntries(
         startingTimeTable.get(room),
@@ -128,15 +561,17 @@ public final class Schedule {
       @Override
       public Iterator<Entry<Room, PresentAssignment>> iterator() {
         return new AbstractIterator<Entry<Room, PresentAssignment>>() {
-          final Iterator<Room> roomIterator = getProgram().getRooms().iterator();
+          final BlockIndex block = blockIndex(period);
+          final int roomCount = getProgram().getRooms().size();
+          int roomOrdinal = 0;
 
           @Override
           protected Entry<Room, PresentAssignment> computeNext() {
-            while (roomIterator.hasNext()) {
-              Room room = roomIterator.next();
-              Optional<PresentAssignment> section = occurringAt(period, room);
-              if (section.isPresent()) {
-                return Maps.immutableEntry(room, section.get());
+            while (roomOrdinal < roomCount) {
+              int sectionOrdinal = block.sectionInRoom(roomOrdinal++, period.getIndex());
+              if (sectionOrdinal != BlockIndex.EMPTY) {
+                Room room = getProgram().getRoomByOrdinal(roomOrdinal - 1);
+                return Maps.immutableEntry(room, presentAssignment(period, sectionOrdinal));
               }
             }
             return endOfData();
@@ -146,7 +581,15 @@ public final class Schedule {
 
       @Override
       public int size() {
-        return Iterators.size(iterator());
+        BlockIndex block = blockIndex(period);
+        int roomCount = getProgram().getRooms().size();
+        int size = 0;
+        for (int r = 0; r < roomCount; r++) {
+          if (block.sectionInRoom(r, period.getIndex()) != BlockIndex.EMPTY) {
+            size++;
+          }
+        }
+        return size;
       }
     }
 
@@ -158,8 +601,7 @@ public final class Schedule {
 
     @Override
     public boolean containsKey(Object room) {
-      BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(room);
-      return roomMap != null && roomMap.containsKey(period);
+      return room instanceof Room && isOccupied(period, (Room) room);
     }
 
     @Override
@@ -264,37 +706,234 @@ public final class Schedule {
   }
 
   public Optional<PresentAssignment> occurringAt(ClassPeriod period, Room room) {
-    Optional<StartAssignment> startingBefore = startingBefore(room, period);
-    if (startingBefore.isPresent()) {
-      StartAssignment prevStart = startingBefore.get();
-      int relativeIndex = period.getIndex() - prevStart.getPeriod().getIndex();
-      if (relativeIndex >= 0 && relativeIndex < prevStart.getSection().getPeriodLength()) {
-        return Optional.of(prevStart.getPresentAssignment(relativeIndex));
+    int sectionOrdinal = blockIndex(period).sectionInRoom(room.getOrdinal(), period.getIndex());
+    if (sectionOrdinal == BlockIndex.EMPTY) {
+      return Optional.absent();
+    }
+    return Optional.of(presentAssignment(period, sectionOrdinal));
+  }
+
+  /**
+   * Returns whether any section is occupying the specified room during the specified period. This
+   * is a constant-time array lookup.
+   */
+  public boolean isOccupied(ClassPeriod period, Room room) {
+    int sectionOrdinal = blockIndex(period).sectionInRoom(room.getOrdinal(), period.getIndex());
+    return sectionOrdinal != BlockIndex.EMPTY;
+  }
+
+  /**
+   * Returns the section occupying the specified room during the specified period, or {@code null}
+   * if the room is free. Unlike {@link #occurringAt(ClassPeriod, Room)}, this allocates nothing.
+   */
+  @Nullable
+  public Section occupantAt(ClassPeriod period, Room room) {
+    int sectionOrdinal = blockIndex(period).sectionInRoom(room.getOrdinal(), period.getIndex());
+    return (sectionOrdinal == BlockIndex.EMPTY) ? null : getProgram().getSectionByOrdinal(
+        sectionOrdinal);
+  }
+
+  /**
+   * Returns whether the specified teacher is teaching any section during the specified period.
+   */
+  public boolean isTeaching(Teacher teacher, ClassPeriod period) {
+    long busy = blockIndex(period).teacherBusyPeriods(teacher.getOrdinal());
+    return (busy & (1L << period.getIndex())) != 0;
+  }
+
+  /**
+   * Returns the assignment the specified teacher is teaching during the specified period, if any.
+   */
+  public Optional<PresentAssignment> teachingAt(Teacher teacher, ClassPeriod period) {
+    int sectionOrdinal = blockIndex(period).sectionTaughtBy(
+        teacher.getOrdinal(),
+        period.getIndex());
+    if (sectionOrdinal == BlockIndex.EMPTY) {
+      return Optional.absent();
+    }
+    return Optional.of(presentAssignment(period, sectionOrdinal));
+  }
+
+  /**
+   * Returns whether any teacher of the specified assignment's section is already teaching during
+   * any of the periods of the assignment. This takes time proportional to the number of teachers of
+   * the section.
+   */
+  public boolean hasTeacherConflict(StartAssignment assign) {
+    BlockIndex block = blocks[assign.getTimeBlock().getOrdinal()];
+    long mask = BlockIndex.periodMask(assign);
+    for (Teacher teacher : getProgram().teachersFor(assign.getSection())) {
+      if ((block.teacherBusyPeriods(teacher.getOrdinal()) & mask) != 0) {
+        return true;
       }
     }
-    return Optional.absent();
+    return false;
   }
 
-  public ModifiedState<ScheduleValidator, Schedule> assignStart(StartAssignment assign) {
-    ScheduleValidator validator = factory.validatorProvider.get();
-    factory.logic.validate(validator, this, assign);
-    for (PresentAssignment pAssign : assign.getPresentAssignments()) {
-      factory.logic.validate(validator, this, pAssign);
+  /**
+   * Returns the number of periods of the specified assignment during which its room is free and
+   * none of its section's teachers are teaching. An assignment that could be made without
+   * displacing anything has slack equal to its length.
+   */
+  public int slack(StartAssignment assign) {
+    BlockIndex block = blocks[assign.getTimeBlock().getOrdinal()];
+    long busy = 0L;
+    for (Teacher teacher : getProgram().teachersFor(assign.getSection())) {
+      busy |= block.teacherBusyPeriods(teacher.getOrdinal());
+    }
+    int roomOrdinal = assign.getRoom().getOrdinal();
+    int start = assign.getPeriod().getIndex();
+    int end = start + assign.getSection().getPeriodLength();
+    int slack = 0;
+    for (int i = start; i < end; i++) {
+      if ((busy & (1L << i)) == 0 && block.sectionInRoom(roomOrdinal, i) == BlockIndex.EMPTY) {
+        slack++;
+      }
+    }
+    return slack;
+  }
+
+  /**
+   * Returns whether the specified assignment could be made by displacing at most the sections
+   * {@code a} and {@code b}, either of which may be null: that is, whether its room is free, and
+   * none of its section's teachers are teaching, during each of its periods, except for those
+   * sections. This only consults the occupancy and teacher indexes, and checks nothing else.
+   */
+  public boolean isFreeExcept(StartAssignment assign, @Nullable Section a, @Nullable Section b) {
+    BlockIndex block = blocks[assign.getTimeBlock().getOrdinal()];
+    TimeBlock timeBlock = assign.getTimeBlock();
+    Room room = assign.getRoom();
+    int roomOrdinal = room.getOrdinal();
+    int start = assign.getPeriod().getIndex();
+    int end = start + assign.getSection().getPeriodLength();
+    for (int i = start; i < end; i++) {
+      int count = block.roomCount(roomOrdinal, i);
+      int occupant = block.sectionInRoom(roomOrdinal, i);
+      if (count > 0 && !onlyAmong(count, occupant, a, b, timeBlock.getPeriod(i), room, null)) {
+        return false;
+      }
+    }
+    for (Teacher teacher : getProgram().teachersFor(assign.getSection())) {
+      int t = teacher.getOrdinal();
+      for (int i = start; i < end; i++) {
+        int count = block.teacherCount(t, i);
+        int taught = block.sectionTaughtBy(t, i);
+        if (count > 0 && !onlyAmong(count, taught, a, b, timeBlock.getPeriod(i), null, teacher)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Returns whether the count sections in the cell of the specified room or teacher during the
+   * specified period, of which the index records occupant, are all a or b. Sections only share a
+   * cell where the schedule logic allows it, and then the other of a and b must be scheduled over
+   * the cell as well.
+   */
+  private boolean onlyAmong(
+      int count,
+      int occupant,
+      @Nullable Section a,
+      @Nullable Section b,
+      ClassPeriod period,
+      @Nullable Room room,
+      @Nullable Teacher teacher) {
+    Section other;
+    if (a != null && occupant == a.getOrdinal()) {
+      other = b;
+    } else if (b != null && occupant == b.getOrdinal()) {
+      other = a;
+    } else {
+      return false;
+    }
+    if (count == 1) {
+      return true;
+    } else if (count > 2 || other == null) {
+      return false;
+    }
+    StartAssignment otherAssign = assignments.get(other);
+    return otherAssign != null
+        && otherAssign.getPresentPeriods().contains(period)
+        && (room == null || room.equals(otherAssign.getRoom()))
+        && (teacher == null || getProgram().teachersFor(other).contains(teacher));
+  }
+
+  /**
+   * Returns the number of sections using a floating copy of the specified resource during the
+   * specified period: that is, sections requiring the resource that are scheduled in rooms without
+   * it. This is a constant-time array lookup.
+   */
+  public int floatingDemand(Resource resource, ClassPeriod period) {
+    return blockIndex(period).floatingDemand(resource.getOrdinal(), period.getIndex());
+  }
+
+  /**
+   * Returns the assignments using a floating copy of the specified resource during the specified
+   * period, in a new mutable list.
+   */
+  public List<PresentAssignment> floatingHolders(Resource resource, ClassPeriod period) {
+    BlockIndex block = blockIndex(period);
+    int demand = block.floatingDemand(resource.getOrdinal(), period.getIndex());
+    List<PresentAssignment> holders = Lists.newArrayListWithCapacity(demand);
+    if (demand == 0) {
+      return holders;
+    }
+    Program program = getProgram();
+    int roomCount = program.getRooms().size();
+    for (int r = 0; r < roomCount; r++) {
+      int sectionOrdinal = block.sectionInRoom(r, period.getIndex());
+      if (sectionOrdinal != BlockIndex.EMPTY) {
+        Section section = program.getSectionByOrdinal(sectionOrdinal);
+        if (program.resourceRequirements(section).contains(resource)
+            && !program.roomResources(program.getRoomByOrdinal(r)).contains(resource)) {
+          holders.add(presentAssignment(period, sectionOrdinal));
+        }
+      }
     }
+    return holders;
+  }
+
+  private BlockIndex blockIndex(ClassPeriod period) {
+    return blocks[period.getTimeBlock().getOrdinal()];
+  }
+
+  private PresentAssignment presentAssignment(ClassPeriod period, int sectionOrdinal) {
+    StartAssignment start = assignments.get(getProgram().getSectionByOrdinal(sectionOrdinal));
+    return start.getPresentAssignment(period.getIndex() - start.getPeriod().getIndex());
+  }
+
+  /**
+   * Makes the specified assignment if the schedule logic accepts it. The validator returned is
+   * {@linkplain ScheduleValidator#failFast() fail-fast}, so it only tells whether the assignment
+   * was made, and if not, the first condition that failed; use {@link #diagnose} to find every
+   * conflict.
+   */
+  public ModifiedState<ScheduleValidator, Schedule> assignStart(StartAssignment assign) {
+    ScheduleValidator validator = ScheduleValidator.failFast();
+    validate(validator, assign);
     if (validator.isValid()) {
-      BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(assign.getRoom());
-      return ModifiedState.of(
-          validator,
-          factory.create(
-              startingTimeTable.insert(
-                  assign.getRoom(),
-                  roomMap.insert(assign.getPeriod(), assign.getSection())),
-              assignments.insert(assign.getSection(), assign)));
+      return ModifiedState.of(validator, add(assign));
     } else {
       return ModifiedState.of(validator, this);
     }
   }
 
+  /*
+   * Makes the specified assignment without validating it.
+   */
+  private Schedule add(StartAssignment assign) {
+    BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(assign.getRoom());
+    return modify(
+        startingTimeTable.insert(
+            assign.getRoom(),
+            roomMap.insert(assign.getPeriod(), assign.getSection())),
+        assignments.insert(assign.getSection(), assign),
+        true,
+        assign);
+  }
+
   public ModifiedState<Optional<StartAssignment>, Schedule> removeStartingAt(
       ClassPeriod period,
       Room room) {
@@ -302,19 +941,219 @@ public final class Schedule {
     Schedule revised = this;
     if (startingAt.isPresent()) {
       BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(room);
-      revised = factory.create(
+      revised = modify(
           startingTimeTable.insert(room, roomMap.delete(period)),
-          assignments.delete(startingAt.get().getSection()));
+          assignments.delete(startingAt.get().getSection()),
+          false,
+          startingAt.get());
     }
     return ModifiedState.of(startingAt, revised);
   }
 
-  public ModifiedState<ScheduleValidator, Schedule> forceAssignStart(StartAssignment assign) {
+  /**
+   * Returns a schedule with the specified contents: a new schedule if this one is persistent, or
+   * this schedule, modified in place, if it is mutable.
+   */
+  private Schedule modify(
+      BstMap<Room, BstMap<ClassPeriod, Section>> newTimeTable,
+      BstMap<Section, StartAssignment> newAssignments,
+      boolean added,
+      StartAssignment assign) {
+    int blockOrdinal = assign.getTimeBlock().getOrdinal();
+    BstMap<Course, ClassPeriod> newEarliestEnds = updateEarliestEnds(newAssignments, added, assign);
+    if (journal == null) {
+      BlockIndex[] newBlocks = blocks.clone();
+      newBlocks[blockOrdinal] = blocks[blockOrdinal].copy();
+      updateBlock(newBlocks[blockOrdinal], added, assign, newTimeTable, newAssignments);
+      return factory.create(newTimeTable, newAssignments, newEarliestEnds, newBlocks);
+    }
+    journal.add(new JournalEntry(
+        startingTimeTable,
+        assignments,
+        earliestEnds,
+        new Change(added, assign)));
+    startingTimeTable = newTimeTable;
+    assignments = newAssignments;
+    earliestEnds = newEarliestEnds;
+    updateBlock(writableBlock(assign.getTimeBlock()), added, assign);
+    return this;
+  }
+
+  /*
+   * Adding a section can only make its course end earlier. Removing one only changes anything if it
+   * was the section ending first, in which case we rescan the course's other sections, of which
+   * there are few.
+   */
+  private BstMap<Course, ClassPeriod> updateEarliestEnds(
+      BstMap<Section, StartAssignment> newAssignments,
+      boolean added,
+      StartAssignment assign) {
+    Course course = assign.getCourse();
+    ClassPeriod end = assign.getLastPeriod();
+    ClassPeriod earliest = earliestEnds.get(course);
+    if (added) {
+      return (earliest == null || end.compareTo(earliest) < 0)
+          ? earliestEnds.insert(course, end)
+          : earliestEnds;
+    } else if (!end.equals(earliest)) {
+      return earliestEnds;
+    }
+    ClassPeriod newEarliest = null;
+    for (Section section : getProgram().getSectionsOfCourse(course)) {
+      StartAssignment other = newAssignments.get(section);
+      if (other != null
+          && (newEarliest == null || other.getLastPeriod().compareTo(newEarliest) < 0)) {
+        newEarliest = other.getLastPeriod();
+      }
+    }
+    return (newEarliest == null)
+        ? earliestEnds.delete(course)
+        : earliestEnds.insert(course, newEarliest);
+  }
+
+  private void updateBlock(BlockIndex block, boolean add, StartAssignment assign) {
+    updateBlock(block, add, assign, startingTimeTable, assignments);
+  }
+
+  /*
+   * The time table and assignments are those of the schedule once the change is made.
+   */
+  private static void updateBlock(
+      BlockIndex block,
+      boolean add,
+      StartAssignment assign,
+      BstMap<Room, BstMap<ClassPeriod, Section>> timeTable,
+      BstMap<Section, StartAssignment> assignments) {
+    if (add) {
+      block.add(assign);
+    } else {
+      block.remove(assign, timeTable.get(assign.getRoom()), assignments);
+    }
+  }
+
+  private BlockIndex writableBlock(TimeBlock block) {
+    int ordinal = block.getOrdinal();
+    if (!ownedBlocks[ordinal]) {
+      blocks[ordinal] = blocks[ordinal].copy();
+      ownedBlocks[ordinal] = true;
+    }
+    return blocks[ordinal];
+  }
+
+  /**
+   * Returns a full-detail validator listing every conflict the specified assignment would have with
+   * this schedule, without making it.
+   */
+  public ScheduleValidator diagnose(StartAssignment assign) {
     ScheduleValidator validator = factory.validatorProvider.get();
+    validate(validator, assign);
+    return validator;
+  }
+
+  private void validate(ScheduleValidator validator, StartAssignment assign) {
     factory.logic.validate(validator, this, assign);
-    for (PresentAssignment pAssign : assign.getPresentAssignments()) {
-      factory.logic.validate(validator, this, pAssign);
+    List<PresentAssignment> presentAssignments = assign.getPresentAssignments();
+    for (int i = 0; i < presentAssignments.size(); i++) {
+      if (validator.isFailFast() && !validator.isValid()) {
+        return;
+      }
+      factory.logic.validate(validator, this, presentAssignments.get(i));
+    }
+  }
+
+  /**
+   * Screens each of the specified candidate assignments against this schedule, without making any
+   * of them: finds whether its room and its section's teachers are free during all of its periods,
+   * and if so, whether {@link #assignStart} would accept it. Consecutive candidates for the same
+   * section in the same time block share the lookup of the teachers' busy periods, so batches are
+   * best grouped by section.
+   */
+  public Screening screen(List<StartAssignment> candidates) {
+    ImmutableList<StartAssignment> list = ImmutableList.copyOf(candidates);
+    byte[] flags = new byte[list.size()];
+    screen(list, flags, 0, list.size());
+    return new Screening(list, flags);
+  }
+
+  /**
+   * Screens the specified candidate assignments as {@link #screen(List)} does, splitting large
+   * batches among the threads of the specified executor. This schedule must not be modified until
+   * this returns, and since this waits for the executor, it must not be called from a thread of an
+   * executor whose other threads may all be busy, such as the one running the optimizer's workers.
+   */
+  public Screening screen(List<StartAssignment> candidates, ExecutorService service) {
+    final ImmutableList<StartAssignment> list = ImmutableList.copyOf(candidates);
+    final byte[] flags = new byte[list.size()];
+    if (list.size() <= SCREENING_CHUNK) {
+      screen(list, flags, 0, list.size());
+      return new Screening(list, flags);
+    }
+    List<Callable<Void>> tasks = Lists.newArrayList();
+    for (int start = 0; start < list.size(); start += SCREENING_CHUNK) {
+      final int from = start;
+      final int to = Math.min(list.size(), start + SCREENING_CHUNK);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          screen(list, flags, from, to);
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Void> future : service.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    return new Screening(list, flags);
+  }
+
+  private void screen(List<StartAssignment> candidates, byte[] flags, int from, int to) {
+    Section section = null;
+    TimeBlock block = null;
+    long teachersBusy = 0L;
+    for (int i = from; i < to; i++) {
+      StartAssignment assign = candidates.get(i);
+      BlockIndex index = blocks[assign.getTimeBlock().getOrdinal()];
+      if (!assign.getSection().equals(section) || !assign.getTimeBlock().equals(block)) {
+        section = assign.getSection();
+        block = assign.getTimeBlock();
+        teachersBusy = 0L;
+        for (Teacher teacher : getProgram().teachersFor(section)) {
+          teachersBusy |= index.teacherBusyPeriods(teacher.getOrdinal());
+        }
+      }
+      byte flag = 0;
+      if ((teachersBusy & BlockIndex.periodMask(assign)) != 0) {
+        flag |= Screening.TEACHERS_BUSY;
+      }
+      int roomOrdinal = assign.getRoom().getOrdinal();
+      int start = assign.getPeriod().getIndex();
+      int end = start + section.getPeriodLength();
+      for (int p = start; p < end; p++) {
+        if (index.sectionInRoom(roomOrdinal, p) != BlockIndex.EMPTY) {
+          flag |= Screening.ROOM_BUSY;
+          break;
+        }
+      }
+      if (flag == 0) {
+        ScheduleValidator validator = ScheduleValidator.failFast();
+        validate(validator, assign);
+        if (!validator.isValid()) {
+          flag = Screening.REJECTED;
+        }
+      }
+      flags[i] = flag;
     }
+  }
+
+  public ModifiedState<ScheduleValidator, Schedule> forceAssignStart(StartAssignment assign) {
+    ScheduleValidator validator = diagnose(assign);
     if (!validator.isLocallyValid()) {
       return ModifiedState.of(validator, this);
     }
@@ -322,12 +1161,14 @@ public final class Schedule {
     for (GlobalConflict<PresentAssignment> conflict : validator.getGlobalPresentConflicts()) {
       for (PresentAssignment conflicting : conflict.getConflictingAssignments()) {
         StartAssignment toRemove = conflicting.getStartAssignment();
-        revised = removeStartingAt(toRemove.getPeriod(), toRemove.getRoom()).getNewState();
+        revised = revised.removeStartingAt(toRemove.getPeriod(), toRemove.getRoom()).getNewState();
       }
     }
     for (GlobalConflict<StartAssignment> conflict : validator.getGlobalStartConflicts()) {
       for (StartAssignment conflicting : conflict.getConflictingAssignments()) {
-        revised = removeStartingAt(conflicting.getPeriod(), conflicting.getRoom()).getNewState();
+        revised = revised
+            .removeStartingAt(conflicting.getPeriod(), conflicting.getRoom())
+            .getNewState();
       }
     }
     return revised.assignStart(assign);
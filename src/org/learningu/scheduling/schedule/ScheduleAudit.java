@@ -0,0 +1,56 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import org.learningu.scheduling.logic.ScheduleValidator;
+
+/**
+ * The result of {@linkplain Schedule#audit auditing} a schedule: every assignment in it that the
+ * schedule logic would reject if the rest of the schedule were left as it is, with a full-detail
+ * validator listing its conflicts. A conflict between two assignments is reported for each of them.
+ *
+ * @author lowasser
+ */
+public final class ScheduleAudit {
+  private final int assignmentCount;
+
+  private final ImmutableMap<StartAssignment, ScheduleValidator> conflicts;
+
+  ScheduleAudit(int assignmentCount, ImmutableMap<StartAssignment, ScheduleValidator> conflicts) {
+    this.assignmentCount = assignmentCount;
+    this.conflicts = checkNotNull(conflicts);
+  }
+
+  /**
+   * Returns whether every assignment in the schedule passed validation.
+   */
+  public boolean isClean() {
+    return conflicts.isEmpty();
+  }
+
+  /**
+   * Returns the number of assignments audited.
+   */
+  public int getAssignmentCount() {
+    return assignmentCount;
+  }
+
+  /**
+   * Returns the conflicts of each assignment that failed validation, in order of start period.
+   */
+  public ImmutableMap<StartAssignment, ScheduleValidator> getConflicts() {
+    return conflicts;
+  }
+
+  @Override
+  public String toString() {
+    return Objects
+        .toStringHelper(this)
+        .add("assignmentCount", assignmentCount)
+        .add("conflicts", conflicts)
+        .toString();
+  }
+}
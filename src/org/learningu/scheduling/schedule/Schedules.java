@@ -1,35 +1,57 @@
 package org.learningu.scheduling.schedule;
 
-import static com.google.common.base.Preconditions.checkState;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.logic.ScheduleValidator;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialSchedule;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialStartAssignment;
-import org.learningu.scheduling.util.ModifiedState;
 
 public final class Schedules {
   private Schedules() {
   }
 
+  /**
+   * Deserializes the specified schedule, building it in bulk and then auditing it once, and throws
+   * an {@code IllegalStateException} if it has any conflicts.
+   */
   public static final Schedule deserialize(Schedule.Factory factory, SerialSchedule serial) {
-    Schedule current = factory.create();
-    Program program = current.getProgram();
+    Schedule schedule = load(factory, serial);
+    checkClean(schedule.audit());
+    return schedule;
+  }
+
+  /**
+   * Deserializes the specified schedule as {@link #deserialize(Schedule.Factory, SerialSchedule)}
+   * does, auditing it in parallel on the specified executor.
+   */
+  public static final Schedule deserialize(
+      Schedule.Factory factory,
+      SerialSchedule serial,
+      ExecutorService service) {
+    Schedule schedule = load(factory, serial);
+    checkClean(schedule.audit(service));
+    return schedule;
+  }
 
+  private static Schedule load(Schedule.Factory factory, SerialSchedule serial) {
+    Program program = factory.getProgram();
+    List<StartAssignment> assigns = Lists.newArrayListWithCapacity(serial.getAssignmentCount());
     for (SerialStartAssignment serialAssign : serial.getAssignmentList()) {
-      StartAssignment assign = StartAssignment.create(
+      assigns.add(StartAssignment.create(
           program.getPeriod(serialAssign.getPeriodId()),
           program.getRoom(serialAssign.getRoomId()),
-          program.getSection(serialAssign.getSectionId()));
-      ModifiedState<ScheduleValidator, Schedule> modified = current.assignStart(assign);
-      checkState(
-          modified.getResult().isValid(),
-          "Schedule conflict when adding assignment: %s",
-          modified.getResult());
-      current = modified.getNewState();
+          program.getSection(serialAssign.getSectionId())));
     }
+    return factory.createTrusted(assigns);
+  }
 
-    return current;
+  private static void checkClean(ScheduleAudit audit) {
+    if (!audit.isClean()) {
+      throw new IllegalStateException("Schedule conflicts: " + audit);
+    }
   }
 
   public static final SerialSchedule serialize(Schedule schedule) {
@@ -0,0 +1,92 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.BitSet;
+
+/**
+ * The outcome of {@linkplain Schedule#screen screening} a batch of candidate assignments against a
+ * schedule: for each candidate, whether its room and its section's teachers are free during all of
+ * its periods, and if so, whether the schedule logic would accept it.
+ *
+ * @author lowasser
+ */
+public final class Screening {
+  static final byte ROOM_BUSY = 1;
+  static final byte TEACHERS_BUSY = 2;
+  static final byte REJECTED = 4;
+
+  private final ImmutableList<StartAssignment> candidates;
+
+  /*
+   * The flags of each candidate. Candidates whose room or teachers are busy are never run through
+   * the logic, and so are never marked rejected.
+   */
+  private final byte[] flags;
+
+  Screening(ImmutableList<StartAssignment> candidates, byte[] flags) {
+    this.candidates = candidates;
+    this.flags = flags;
+  }
+
+  public int size() {
+    return candidates.size();
+  }
+
+  public StartAssignment getCandidate(int i) {
+    return candidates.get(i);
+  }
+
+  /**
+   * Returns whether the room of the {@code i}th candidate is free during all of its periods.
+   */
+  public boolean isRoomFree(int i) {
+    return (flag(i) & ROOM_BUSY) == 0;
+  }
+
+  /**
+   * Returns whether none of the teachers of the {@code i}th candidate's section are teaching during
+   * any of its periods.
+   */
+  public boolean areTeachersFree(int i) {
+    return (flag(i) & TEACHERS_BUSY) == 0;
+  }
+
+  /**
+   * Returns whether the {@code i}th candidate could be made without displacing anything: that is,
+   * its room and teachers are free, and the schedule logic accepts it.
+   */
+  public boolean isAssignable(int i) {
+    return flag(i) == 0;
+  }
+
+  /**
+   * Returns the indices of the candidates that could be made without displacing anything.
+   */
+  public BitSet assignable() {
+    BitSet result = new BitSet(flags.length);
+    for (int i = 0; i < flags.length; i++) {
+      if (flags[i] == 0) {
+        result.set(i);
+      }
+    }
+    return result;
+  }
+
+  private byte flag(int i) {
+    checkElementIndex(i, flags.length);
+    return flags[i];
+  }
+
+  @Override
+  public String toString() {
+    return Objects
+        .toStringHelper(this)
+        .add("candidates", candidates.size())
+        .add("assignable", assignable().cardinality())
+        .toString();
+  }
+}
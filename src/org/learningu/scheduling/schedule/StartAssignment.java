@@ -30,6 +30,17 @@ public final class StartAssignment implements Assignment {
     return new StartAssignment(period, room, section);
   }
 
+  /**
+   * Returns whether the specified section, starting in the specified period, would end before its
+   * time block does; that is, whether {@link #create} would accept the period for the section.
+   */
+  public static boolean fitsInBlock(ClassPeriod period, Section section) {
+    return period.getIndex() + section.getPeriodLength() <= period
+        .getTimeBlock()
+        .getPeriods()
+        .size();
+  }
+
   private final ClassPeriod period;
   private final Room room;
   private final Section section;
@@ -40,9 +51,15 @@ public final class StartAssignment implements Assignment {
     this.section = checkNotNull(section);
     checkArgument(period.getProgram() == room.getProgram()
         && period.getProgram() == section.getProgram());
-    checkArgument(period.getIndex() + getSection().getPeriodLength() <= getTimeBlock()
-        .getPeriods()
-        .size());
+    checkArgument(fitsInBlock(period, section));
+  }
+
+  /**
+   * Returns the last period during which this assignment's section is held.
+   */
+  public ClassPeriod getLastPeriod() {
+    int lastIndex = period.getIndex() + section.getPeriodLength() - 1;
+    return period.getTimeBlock().getPeriods().get(lastIndex);
   }
 
   public List<ClassPeriod> getPresentPeriods() {
@@ -0,0 +1,164 @@
+package org.learningu.scheduling.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.learningu.scheduling.flags.Flag;
+
+/**
+ * The source of all randomness in an optimization. Every worker draws from its own stream of
+ * pseudorandom numbers, installed on whichever thread happens to be running it, so workers never
+ * contend on a shared {@link Random}, and a run can be reproduced from its seed.
+ *
+ * <p>
+ * Streams are split from the current stream, SplitMix-style, so the streams a worker hands out
+ * depend only on its own stream and the order in which it splits them, never on thread
+ * scheduling.
+ *
+ * @author lowasser
+ */
+@Singleton
+public final class RandomStreams {
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private final long seed;
+
+  /*
+   * Seeds the default streams of threads that draw random numbers without a stream installed.
+   * Those are not reproducible if several threads race for them.
+   */
+  private final AtomicLong defaultSeeds;
+
+  private final ThreadLocal<Random> currentStream = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random(mix64(defaultSeeds.addAndGet(GOLDEN_GAMMA)));
+    }
+  };
+
+  private final Random currentRandom = new CurrentRandom();
+
+  @Inject
+  RandomStreams(
+      @Flag(
+          name = "seed",
+          description = "The seed for all random numbers; if absent, a seed is chosen and logged")
+      Optional<Long> seed,
+      Logger logger) {
+    this.seed = seed.isPresent() ? seed.get() : mix64(System.nanoTime());
+    this.defaultSeeds = new AtomicLong(mix64(this.seed));
+    logger.log(Level.INFO, "Using random seed {0}", Long.toString(this.seed));
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Returns the root stream of this seed. Two calls return independent {@code Random} objects
+   * producing identical sequences.
+   */
+  public Random root() {
+    return new Random(seed);
+  }
+
+  /**
+   * Returns the stream installed on the current thread.
+   */
+  public Random current() {
+    return currentStream.get();
+  }
+
+  /**
+   * Returns a new stream, seeded from the next value of the current thread's stream.
+   */
+  public Random split() {
+    return new Random(mix64(current().nextLong() + GOLDEN_GAMMA));
+  }
+
+  /**
+   * Installs the specified stream on the current thread, returning the stream it replaces, which
+   * the caller should reinstall when it is done.
+   */
+  public Random install(Random stream) {
+    Random previous = currentStream.get();
+    currentStream.set(checkNotNull(stream));
+    return previous;
+  }
+
+  /**
+   * Returns a {@code Random} that draws every value from whichever stream is installed on the
+   * calling thread. It may be shared between threads without contention.
+   */
+  public Random asRandom() {
+    return currentRandom;
+  }
+
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  @SuppressWarnings("serial")
+  private final class CurrentRandom extends Random {
+    @Override
+    protected int next(int bits) {
+      return current().nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+      return current().nextInt();
+    }
+
+    @Override
+    public int nextInt(int n) {
+      return current().nextInt(n);
+    }
+
+    @Override
+    public long nextLong() {
+      return current().nextLong();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+      return current().nextBoolean();
+    }
+
+    @Override
+    public float nextFloat() {
+      return current().nextFloat();
+    }
+
+    @Override
+    public double nextDouble() {
+      return current().nextDouble();
+    }
+
+    @Override
+    public double nextGaussian() {
+      return current().nextGaussian();
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+      current().nextBytes(bytes);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+      // Random's constructor calls this before the outer instance is usable; the delegates are
+      // seeded separately.
+    }
+  }
+}
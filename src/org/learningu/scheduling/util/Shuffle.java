@@ -10,7 +10,7 @@ public final class Shuffle {
 
   public static <E> List<E> shuffleK(List<E> list, int k, Random rnd) {
     for (int i = 0; i < k; i++) {
-      int j = rnd.nextInt(list.size() - k) + k;
+      int j = i + rnd.nextInt(list.size() - i);
       Collections.swap(list, i, j);
     }
     return list.subList(0, k);
@@ -12,6 +12,7 @@ import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
 import org.learningu.scheduling.graph.SerialGraph.SerialProgram;
 import org.learningu.scheduling.graph.SerialGraph.SerialRoom;
 import org.learningu.scheduling.graph.SerialGraph.SerialSection;
+import org.learningu.scheduling.graph.SerialGraph.SerialSubject;
 import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
 import org.learningu.scheduling.graph.SerialGraph.SerialTimeBlock;
 import org.learningu.scheduling.graph.Teacher;
@@ -73,6 +74,8 @@ public class TestProgramModule extends AbstractModule {
 
   private List<SerialSection> serialCourses = Lists.newArrayList();
 
+  private List<SerialSubject> serialSubjects = Lists.newArrayList();
+
   protected SerialPeriod bindPeriod(String name) {
     SerialPeriod period = SerialPeriod
         .newBuilder()
@@ -122,10 +125,25 @@ public class TestProgramModule extends AbstractModule {
     return room;
   }
 
-  protected SerialSection bindCourse(String name, int periods, int size, SerialTeacher... teachers) {
+  protected SerialSubject bindSubject(String name) {
+    SerialSubject subject = SerialSubject.newBuilder().setSubjectId(uid++).setTitle(name).build();
+    bind(SerialSubject.class).annotatedWith(Names.named(name)).toInstance(subject);
+    serialSubjects.add(subject);
+    return subject;
+  }
+
+  protected SerialSection bindCourse(
+      String name,
+      SerialSubject subject,
+      int periods,
+      int size,
+      SerialTeacher... teachers) {
+    int id = uid++;
     SerialSection.Builder builder = SerialSection
         .newBuilder()
-        .setSectionId(uid++)
+        .setSectionId(id)
+        .setCourseId(id)
+        .setSubjectId(subject.getSubjectId())
         .setPeriodLength(periods)
         .setCourseTitle(name)
         .setEstimatedClassSize(size)
@@ -147,6 +165,7 @@ public class TestProgramModule extends AbstractModule {
         .addAllTeacher(serialTeachers)
         .addAllRoom(serialRooms)
         .addAllSection(serialCourses)
+        .addAllSubject(serialSubjects)
         .build();
   }
 }
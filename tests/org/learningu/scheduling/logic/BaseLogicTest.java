@@ -10,6 +10,7 @@ import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
+import org.learningu.scheduling.graph.SerialGraph.SerialSubject;
 import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
 
 import com.google.common.collect.ImmutableList;
@@ -41,11 +42,13 @@ public abstract class BaseLogicTest extends TestCase {
         bindRoom("Harper135", 20, tenAM, elevenAM, noon);
         bindRoom("Harper141", 20, tenAM, noon);
         bindRoom("Harper142", 20, tenAM, elevenAM);
-        bindCourse("ScienceCourse", 1, 15, alice, carol);
-        bindCourse("PiratesCourse", 1, 40, bob);
-        bindCourse("MathCourse", 1, 10, carol);
-        bindCourse("OrigamiCourse", 2, 10, dave);
-        bindCourse("ZombiesCourse", 3, 15, ellie);
+        SerialSubject science = bindSubject("Science");
+        SerialSubject humanities = bindSubject("Humanities");
+        bindCourse("ScienceCourse", science, 1, 15, alice, carol);
+        bindCourse("PiratesCourse", humanities, 1, 40, bob);
+        bindCourse("MathCourse", science, 1, 10, carol);
+        bindCourse("OrigamiCourse", humanities, 2, 10, dave);
+        bindCourse("ZombiesCourse", humanities, 3, 15, ellie);
       }
 
       @SuppressWarnings("unused")
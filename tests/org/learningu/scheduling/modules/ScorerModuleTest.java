@@ -0,0 +1,172 @@
+package org.learningu.scheduling.modules;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+import java.util.List;
+import java.util.Random;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.modules.ScorerModule.ScoreAccumulator;
+import org.learningu.scheduling.modules.ScorerModule.ScorerImpl;
+import org.learningu.scheduling.optimization.IncrementalScorer;
+import org.learningu.scheduling.schedule.BaseScheduleTest;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+import org.learningu.scheduling.scorers.SerialScorers.CompleteScorer;
+import org.learningu.scheduling.scorers.SerialScorers.ScaledScorer;
+import org.learningu.scheduling.scorers.SerialScorers.SerialScorerImpl;
+
+/**
+ * Tests that the incremental scores of a tracked mutable schedule, and the fused scores of the
+ * schedule and its snapshots, agree with full componentwise scores, through random sequences of
+ * additions, removals, commits and rollbacks.
+ *
+ * @author lowasser
+ */
+public class ScorerModuleTest extends BaseScheduleTest {
+  private static final int ROUNDS = 200;
+  private static final int MAX_CHANGES_PER_ROUND = 4;
+
+  private ScorerModule module;
+  private List<StartAssignment> candidates;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    module = new ScorerModule();
+    Program program = injector.getInstance(Program.class);
+    ImmutableList.Builder<StartAssignment> candidatesBuilder = ImmutableList.builder();
+    for (ClassPeriod period : program.getPeriods()) {
+      for (Room room : program.getRooms()) {
+        for (Section section : program.getSections()) {
+          if (StartAssignment.fitsInBlock(period, section)) {
+            candidatesBuilder.add(StartAssignment.create(period, room, section));
+          }
+        }
+      }
+    }
+    candidates = candidatesBuilder.build();
+  }
+
+  public void testBackToBackClasses() {
+    checkAllSeeds(SerialScorerImpl.BACK_TO_BACK_CLASSES);
+  }
+
+  public void testSubjectAttendanceLevels() {
+    checkAllSeeds(SerialScorerImpl.SUBJECT_ATTENDANCE_LEVELS);
+  }
+
+  public void testEveryComponent() {
+    for (SerialScorerImpl impl : SerialScorerImpl.values()) {
+      checkAllSeeds(impl);
+    }
+  }
+
+  private void checkAllSeeds(SerialScorerImpl impl) {
+    for (int seed = 0; seed < 10; seed++) {
+      checkTracker(impl, 1.0, 1.0, new Random(seed));
+      // exercises the general power and a negative multiplier
+      checkTracker(impl, 1.5, -2.0, new Random(seed));
+    }
+  }
+
+  private void checkTracker(
+      SerialScorerImpl serialImpl,
+      double exponent,
+      double multiplier,
+      Random random) {
+    ScorerImpl impl = module.deserialize(serialImpl);
+    IncrementalScorer<Schedule> scorer = module.deserialize(CompleteScorer
+        .newBuilder()
+        .addComponent(ScaledScorer
+            .newBuilder()
+            .setImpl(serialImpl)
+            .setExponent(exponent)
+            .setMultiplier(multiplier))
+        .build());
+
+    // start from a nonempty schedule, so the tracker's initial state is checked too
+    Schedule schedule = emptySchedule().mutableCopy();
+    for (int i = 0; i < 3; i++) {
+      schedule.assignStart(candidates.get(random.nextInt(candidates.size())));
+    }
+    schedule.commit();
+    IncrementalScorer.Tracker tracker = scorer.track(schedule);
+    assertAgrees(impl, exponent, multiplier, schedule, tracker.getScore());
+    assertFusedAgrees(impl, exponent, multiplier, scorer, schedule);
+
+    for (int round = 0; round < ROUNDS; round++) {
+      int changes = 1 + random.nextInt(MAX_CHANGES_PER_ROUND);
+      for (int i = 0; i < changes; i++) {
+        if (schedule.getStartAssignments().isEmpty() || random.nextBoolean()) {
+          schedule.assignStart(candidates.get(random.nextInt(candidates.size())));
+        } else {
+          StartAssignment victim = Iterables.get(
+              schedule.getStartAssignments(),
+              random.nextInt(schedule.getStartAssignments().size()));
+          schedule.removeStartingAt(victim.getPeriod(), victim.getRoom());
+        }
+        // updates may be interleaved arbitrarily with changes
+        if (random.nextBoolean()) {
+          assertAgrees(impl, exponent, multiplier, schedule, tracker.update());
+        }
+      }
+      assertAgrees(impl, exponent, multiplier, schedule, tracker.update());
+      assertFusedAgrees(impl, exponent, multiplier, scorer, schedule);
+      if (random.nextBoolean()) {
+        schedule.commit();
+        tracker.commit();
+      } else {
+        schedule.rollback();
+        tracker.rollback();
+      }
+      assertAgrees(impl, exponent, multiplier, schedule, tracker.getScore());
+    }
+  }
+
+  private static void assertAgrees(
+      ScorerImpl impl,
+      double exponent,
+      double multiplier,
+      Schedule schedule,
+      double incrementalScore) {
+    ScoreAccumulator accum = new ScoreAccumulator(exponent, multiplier);
+    impl.score(schedule, accum);
+    double componentwiseScore = accum.getTotal();
+    assertTrue(
+        impl + " incremental score " + incrementalScore + " disagrees with componentwise score "
+            + componentwiseScore + " of " + schedule,
+        agrees(incrementalScore, componentwiseScore));
+  }
+
+  private static void assertFusedAgrees(
+      ScorerImpl impl,
+      double exponent,
+      double multiplier,
+      IncrementalScorer<Schedule> scorer,
+      Schedule schedule) {
+    ScoreAccumulator accum = new ScoreAccumulator(exponent, multiplier);
+    impl.score(schedule, accum);
+    double componentwiseScore = accum.getTotal();
+    // mutable schedules are scored afresh, persistent ones through the cache
+    for (Schedule scored : ImmutableList.of(schedule, schedule.snapshot())) {
+      double fusedScore = scorer.score(scored);
+      assertTrue(
+          impl + " fused score " + fusedScore + " disagrees with componentwise score "
+              + componentwiseScore + " of " + scored,
+          agrees(fusedScore, componentwiseScore));
+    }
+  }
+
+  /*
+   * The fused and incremental scores add up the same terms in a different order from the
+   * componentwise scores, so we allow for rounding.
+   */
+  private static boolean agrees(double score1, double score2) {
+    return Math.abs(score1 - score2) <= 1e-6 * Math.max(1.0, Math.abs(score2));
+  }
+}
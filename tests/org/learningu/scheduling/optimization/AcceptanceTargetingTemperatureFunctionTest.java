@@ -0,0 +1,79 @@
+package org.learningu.scheduling.optimization;
+
+import junit.framework.TestCase;
+
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
+
+/**
+ * Tests for {@link AcceptanceTargetingTemperatureFunction}.
+ * 
+ * @author lowasser
+ */
+public class AcceptanceTargetingTemperatureFunctionTest extends TestCase {
+  private static final double EPSILON = 1e-9;
+
+  private static final int STEPS = 1000;
+
+  private AcceptanceTargetingTemperatureFunction fun;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    fun = new AcceptanceTargetingTemperatureFunction(AdaptiveTemperatureSpec
+        .newBuilder()
+        .setInitialTemperature(1.0)
+        .setFinalTemperature(0.01)
+        .setTargetAcceptanceRatio(0.4)
+        .setAcceptanceWindow(10)
+        .setAdjustmentRate(0.1)
+        .build());
+  }
+
+  public void testStartsAtInitialTemperature() {
+    assertEquals(1.0, fun.temperature(0, STEPS), EPSILON);
+  }
+
+  public void testCoolsWhenAcceptingTooMuch() {
+    double previous = fun.temperature(0, STEPS);
+    for (int i = 1; i < 200; i++) {
+      fun.observe(true, 0, 0);
+      double temp = fun.temperature(i, STEPS);
+      assertTrue(temp <= previous);
+      previous = temp;
+    }
+    assertEquals(0.01, previous, EPSILON);
+  }
+
+  public void testWarmsWhenAcceptingTooLittle() {
+    for (int i = 0; i < 200; i++) {
+      fun.temperature(i, STEPS);
+      fun.observe(true, 0, 0);
+    }
+    double cold = fun.temperature(200, STEPS);
+    double previous = cold;
+    for (int i = 201; i < 400; i++) {
+      fun.observe(false, 0, 0);
+      double temp = fun.temperature(i, STEPS);
+      assertTrue(temp >= previous);
+      previous = temp;
+    }
+    assertTrue(previous > cold);
+    assertEquals(1.0, previous, EPSILON);
+  }
+
+  public void testTargetFallsOverRun() {
+    // accepting one candidate in five is above target only near the end of the run
+    double early = runAtAcceptanceRatio(0, 5);
+    double late = runAtAcceptanceRatio(STEPS - 200, 5);
+    assertTrue(early > late);
+  }
+
+  private double runAtAcceptanceRatio(int from, int period) {
+    double temp = 0;
+    for (int i = from; i < from + 200; i++) {
+      temp = fun.temperature(i, STEPS);
+      fun.observe(i % period == 0, 0, 0);
+    }
+    return temp;
+  }
+}
@@ -0,0 +1,51 @@
+package org.learningu.scheduling.optimization;
+
+import junit.framework.TestCase;
+
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
+
+/**
+ * Tests for {@link GeometricTemperatureFunction}.
+ * 
+ * @author lowasser
+ */
+public class GeometricTemperatureFunctionTest extends TestCase {
+  private static final double EPSILON = 1e-9;
+
+  private static GeometricTemperatureFunction function(double initial, double fin) {
+    return new GeometricTemperatureFunction(AdaptiveTemperatureSpec
+        .newBuilder()
+        .setInitialTemperature(initial)
+        .setFinalTemperature(fin)
+        .build());
+  }
+
+  public void testEndpoints() {
+    GeometricTemperatureFunction fun = function(1.0, 0.01);
+    assertEquals(1.0, fun.temperature(0, 100), EPSILON);
+    assertEquals(0.01, fun.temperature(100, 100), EPSILON);
+    assertEquals(0.01, fun.temperature(150, 100), EPSILON);
+  }
+
+  public void testCoolsByConstantFactor() {
+    GeometricTemperatureFunction fun = function(1.0, 0.01);
+    assertEquals(0.1, fun.temperature(50, 100), EPSILON);
+    double ratio = fun.temperature(1, 100) / fun.temperature(0, 100);
+    for (int i = 1; i < 100; i++) {
+      assertEquals(ratio, fun.temperature(i + 1, 100) / fun.temperature(i, 100), EPSILON);
+    }
+  }
+
+  public void testRejectsInvalidRange() {
+    try {
+      function(0.01, 1.0);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      function(1.0, 0.0);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
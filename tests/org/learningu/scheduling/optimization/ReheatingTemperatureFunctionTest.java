@@ -0,0 +1,130 @@
+package org.learningu.scheduling.optimization;
+
+import junit.framework.TestCase;
+
+import org.learningu.scheduling.Pass.AdaptiveTemperatureSpec;
+
+/**
+ * Tests for {@link ReheatingTemperatureFunction}.
+ * 
+ * @author lowasser
+ */
+public class ReheatingTemperatureFunctionTest extends TestCase {
+  private static final double EPSILON = 1e-9;
+
+  private static final int STEPS = 1000;
+
+  private static final int STAGNATION = 100;
+
+  private ReheatingTemperatureFunction fun;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    fun = new ReheatingTemperatureFunction(AdaptiveTemperatureSpec
+        .newBuilder()
+        .setInitialTemperature(1.0)
+        .setFinalTemperature(0.01)
+        .setStagnationSteps(STAGNATION)
+        .setReheatFactor(0.5)
+        .build());
+  }
+
+  public void testCoolsGeometricallyWhileImproving() {
+    for (int i = 0; i < STEPS; i++) {
+      assertEquals(
+          GeometricTemperatureFunction.geometric(1.0, 0.01, i, STEPS),
+          fun.temperature(i, STEPS),
+          EPSILON);
+      fun.observe(true, i, i);
+    }
+  }
+
+  public void testReheatsAfterStagnation() {
+    int reheatStep = runStagnant(0, STEPS);
+    assertEquals(STAGNATION, reheatStep);
+    assertEquals(0.5, fun.temperature(reheatStep, STEPS), EPSILON);
+    // then cools from the new peak over the rest of the run
+    assertEquals(
+        GeometricTemperatureFunction.geometric(0.5, 0.01, 10, STEPS - reheatStep),
+        fun.temperature(reheatStep + 10, STEPS),
+        EPSILON);
+  }
+
+  public void testImprovementPostponesReheat() {
+    fun.temperature(0, STEPS);
+    fun.observe(true, 0, 0);
+    for (int i = 1; i < 3 * STAGNATION; i++) {
+      double before = fun.temperature(i, STEPS);
+      // a new best every so often
+      fun.observe(true, 0, i / (STAGNATION / 2));
+      assertEquals(before, fun.temperature(i, STEPS), EPSILON);
+    }
+  }
+
+  public void testNewPassNeverExceedsPeak() {
+    int reheatStep = runStagnant(0, STEPS);
+    double peak = fun.temperature(reheatStep, STEPS);
+    for (int i = reheatStep + 1; i < STEPS; i++) {
+      fun.temperature(i, STEPS);
+      fun.observe(true, 0, i);
+    }
+    // the steps start over for the next pass
+    for (int i = 0; i < STEPS; i++) {
+      double temp = fun.temperature(i, STEPS);
+      assertTrue("Temperature " + temp + " above peak " + peak + " at step " + i, temp <= peak);
+      fun.observe(true, 0, STEPS + i);
+    }
+  }
+
+  public void testStagnationCarriesAcrossPasses() {
+    fun.temperature(0, STEPS);
+    fun.observe(true, 0, 0);
+    int passLength = STAGNATION / 4;
+    int steps = 0;
+    // passes too short to stagnate on their own still stagnate together
+    while (steps <= STAGNATION) {
+      for (int i = 0; i < passLength; i++) {
+        fun.temperature(i, passLength);
+        fun.observe(false, 0, 0);
+        steps++;
+      }
+    }
+    assertEquals(0.5, fun.temperature(0, passLength), EPSILON);
+  }
+
+  public void testStagnationCountedInSteps() {
+    // as a primary temperature function, steps are elapsed milliseconds, with many observations
+    // per step
+    fun.temperature(0, 100 * STEPS);
+    fun.observe(true, 0, 0);
+    for (int i = 0; i < 10 * STAGNATION; i++) {
+      fun.observe(false, 0, 0);
+    }
+    assertEquals(1.0, fun.temperature(0, 100 * STEPS), EPSILON);
+    fun.temperature(STAGNATION, 100 * STEPS);
+    fun.observe(false, 0, 0);
+    assertEquals(0.5, fun.temperature(STAGNATION, 100 * STEPS), EPSILON);
+  }
+
+  /*
+   * Runs without improvement from the specified step until the first reheat, and returns the step
+   * at which it reheated. The reheat peak need not be hotter than the temperature it replaces.
+   */
+  private int runStagnant(int from, int nSteps) {
+    double previous = fun.temperature(from, nSteps);
+    fun.observe(true, 0, 0);
+    for (int i = from + 1; i < nSteps; i++) {
+      double temp = fun.temperature(i, nSteps);
+      fun.observe(false, 0, 0);
+      // the temperature at a step only changes if we reheated
+      if (Math.abs(fun.temperature(i, nSteps) - temp) > EPSILON) {
+        return i;
+      }
+      assertTrue(temp <= previous);
+      previous = temp;
+    }
+    fail("Never reheated");
+    return -1;
+  }
+}
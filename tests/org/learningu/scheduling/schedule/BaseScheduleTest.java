@@ -0,0 +1,60 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+import com.google.inject.name.Names;
+
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.logic.BaseLogicTest;
+import org.learningu.scheduling.logic.ChainedScheduleLogic;
+import org.learningu.scheduling.logic.DuplicateSectionLogic;
+import org.learningu.scheduling.logic.RoomConflictLogic;
+import org.learningu.scheduling.logic.ScheduleLogic;
+import org.learningu.scheduling.logic.TeacherConflictLogic;
+
+/**
+ * A base for tests of schedules on the test program, validated by the logics that depend on the
+ * rest of the schedule: duplicate sections, room conflicts and teacher conflicts.
+ * 
+ * @author lowasser
+ */
+public abstract class BaseScheduleTest extends BaseLogicTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return Iterables.concat(super.modules(), ImmutableList.of(new AbstractModule() {
+      @Override
+      protected void configure() {
+      }
+
+      @SuppressWarnings("unused")
+      @Provides
+      ScheduleLogic logic() {
+        return ChainedScheduleLogic.create(
+            new DuplicateSectionLogic(),
+            new RoomConflictLogic(),
+            new TeacherConflictLogic());
+      }
+    }));
+  }
+
+  protected Schedule.Factory factory() {
+    return injector.getInstance(Schedule.Factory.class);
+  }
+
+  protected Schedule emptySchedule() {
+    return factory().create();
+  }
+
+  protected StartAssignment assignment(String period, String room, String course) {
+    return StartAssignment.create(getPeriod(period), getRoom(room), getCourse(course));
+  }
+
+  protected Teacher getTeacher(String name) {
+    return injector.getInstance(Key.get(Teacher.class, Names.named(name)));
+  }
+}
@@ -0,0 +1,133 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.learningu.scheduling.logic.ScheduleValidator;
+
+/**
+ * Tests for {@link Schedule#audit()} and {@link Schedule#audit(ExecutorService)}.
+ *
+ * @author lowasser
+ */
+public class ScheduleAuditTest extends BaseScheduleTest {
+  private ExecutorService service;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    service = Executors.newFixedThreadPool(4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    service.shutdown();
+    service = null;
+    super.tearDown();
+  }
+
+  public void testEmptySchedule() {
+    ScheduleAudit audit = emptySchedule().audit();
+    assertTrue(audit.isClean());
+    assertEquals(0, audit.getAssignmentCount());
+  }
+
+  public void testCleanSchedule() {
+    Schedule schedule = emptySchedule();
+    for (StartAssignment assign : cleanAssignments()) {
+      schedule = schedule.assignStart(assign).getNewState();
+    }
+    assertEquals(4, schedule.getStartAssignments().size());
+    ScheduleAudit audit = schedule.audit();
+    assertTrue(audit.toString(), audit.isClean());
+    assertEquals(4, audit.getAssignmentCount());
+    assertTrue(schedule.isCompletelyValid());
+    assertTrue(schedule.audit(service).isClean());
+  }
+
+  public void testTeacherConflictReportedForBoth() {
+    // Carol teaches both at 10AM
+    StartAssignment science = assignment("10AM", "Harper135", "ScienceCourse");
+    StartAssignment math = assignment("10AM", "Harper141", "MathCourse");
+    Schedule schedule = factory().createTrusted(ImmutableList.of(science, math));
+    ScheduleAudit audit = schedule.audit();
+    assertFalse(audit.isClean());
+    assertFalse(schedule.isCompletelyValid());
+    assertEquals(ImmutableSet.of(science, math), audit.getConflicts().keySet());
+    for (ScheduleValidator validator : audit.getConflicts().values()) {
+      assertFalse(validator.isFailFast());
+      assertFalse(validator.isValid());
+    }
+  }
+
+  public void testRoomOverlapAcrossStartPeriods() {
+    // Origami runs from 10AM through 11AM in Harper142
+    StartAssignment origami = assignment("10AM", "Harper142", "OrigamiCourse");
+    StartAssignment pirates = assignment("11AM", "Harper142", "PiratesCourse");
+    Schedule schedule = factory().createTrusted(ImmutableList.of(origami, pirates));
+    ScheduleAudit audit = schedule.audit();
+    assertEquals(ImmutableSet.of(origami, pirates), audit.getConflicts().keySet());
+    // in order of start period
+    assertEquals(
+        ImmutableList.of(origami, pirates),
+        ImmutableList.copyOf(audit.getConflicts().keySet()));
+  }
+
+  public void testConflictsAmongCleanAssignments() {
+    StartAssignment science = assignment("10AM", "Harper135", "ScienceCourse");
+    StartAssignment math = assignment("10AM", "Harper141", "MathCourse");
+    StartAssignment pirates = assignment("11AM", "Harper130", "PiratesCourse");
+    Schedule schedule = factory().createTrusted(ImmutableList.of(science, math, pirates));
+    ScheduleAudit audit = schedule.audit();
+    assertEquals(3, audit.getAssignmentCount());
+    assertEquals(ImmutableSet.of(science, math), audit.getConflicts().keySet());
+  }
+
+  public void testParallelMatchesSequential() {
+    Schedule clean = emptySchedule();
+    for (StartAssignment assign : cleanAssignments()) {
+      clean = clean.assignStart(assign).getNewState();
+    }
+    Schedule conflicted = factory().createTrusted(ImmutableList.of(
+        assignment("10AM", "Harper135", "ScienceCourse"),
+        assignment("10AM", "Harper141", "MathCourse"),
+        assignment("10AM", "Harper142", "OrigamiCourse"),
+        assignment("11AM", "Harper142", "PiratesCourse"),
+        assignment("10AM", "Harper130", "ZombiesCourse")));
+    for (Schedule schedule : ImmutableList.of(emptySchedule(), clean, conflicted)) {
+      assertSameAudit(schedule.audit(), schedule.audit(service));
+    }
+  }
+
+  public void testParallelAuditOfMutableSchedule() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    for (StartAssignment assign : cleanAssignments()) {
+      assertTrue(schedule.assignStart(assign).getResult().isValid());
+    }
+    assertSameAudit(schedule.audit(), schedule.audit(service));
+    // the schedule is still usable, and the audit did not modify it
+    assertEquals(4, schedule.getStartAssignments().size());
+    schedule.rollback();
+    assertTrue(schedule.getStartAssignments().isEmpty());
+    assertTrue(schedule.audit(service).isClean());
+  }
+
+  private static void assertSameAudit(ScheduleAudit expected, ScheduleAudit actual) {
+    assertEquals(expected.isClean(), actual.isClean());
+    assertEquals(expected.getAssignmentCount(), actual.getAssignmentCount());
+    assertEquals(
+        ImmutableList.copyOf(expected.getConflicts().keySet()),
+        ImmutableList.copyOf(actual.getConflicts().keySet()));
+  }
+
+  private ImmutableList<StartAssignment> cleanAssignments() {
+    return ImmutableList.of(
+        assignment("10AM", "Harper135", "ScienceCourse"),
+        assignment("10AM", "Harper142", "OrigamiCourse"),
+        assignment("11AM", "Harper130", "PiratesCourse"),
+        assignment("10AM", "Harper141", "ZombiesCourse"));
+  }
+}
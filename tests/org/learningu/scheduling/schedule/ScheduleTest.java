@@ -0,0 +1,205 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Teacher;
+
+/**
+ * Tests the mutable, journaled mode of {@link Schedule}, and that mutable schedules, their copies
+ * and their snapshots never see each other's modifications. Also tests that the occupancy and
+ * teacher indexes stay correct when overlapping sections are removed.
+ * 
+ * @author lowasser
+ */
+public class ScheduleTest extends BaseScheduleTest {
+
+  public void testMutableScheduleModifiedInPlace() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    assertTrue(schedule.isMutable());
+    StartAssignment math = assignment("10AM", "Harper135", "MathCourse");
+    assertSame(schedule, schedule.assignStart(math).getNewState());
+    assertEquals(ImmutableSet.of(math), schedule.getStartAssignments());
+  }
+
+  public void testPersistentScheduleUnchanged() {
+    Schedule empty = emptySchedule();
+    StartAssignment math = assignment("10AM", "Harper135", "MathCourse");
+    Schedule withMath = empty.assignStart(math).getNewState();
+    assertNotSame(empty, withMath);
+    assertTrue(empty.getStartAssignments().isEmpty());
+    assertFalse(empty.isOccupied(getPeriod("10AM"), getRoom("Harper135")));
+    assertFalse(empty.isTeaching(getTeacher("Carol"), getPeriod("10AM")));
+    assertTrue(withMath.isOccupied(getPeriod("10AM"), getRoom("Harper135")));
+  }
+
+  public void testRollbackUndoesModifications() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    StartAssignment math = assignment("12PM", "Harper135", "MathCourse");
+    assertTrue(schedule.assignStart(origami).getResult().isValid());
+    int mark = schedule.mark();
+    assertTrue(schedule.assignStart(math).getResult().isValid());
+    schedule.removeStartingAt(origami.getPeriod(), origami.getRoom());
+    assertEquals(2, schedule.changesSince(mark).size());
+    assertFalse(schedule.isOccupied(getPeriod("11AM"), getRoom("Harper135")));
+    assertNull(schedule.earliestEnd(origami.getCourse()));
+
+    schedule.rollback(mark);
+    assertEquals(ImmutableSet.of(origami), schedule.getStartAssignments());
+    assertEquals(origami, schedule.assignmentOf(origami.getSection()));
+    assertNull(schedule.assignmentOf(math.getSection()));
+    assertTrue(schedule.isOccupied(getPeriod("11AM"), getRoom("Harper135")));
+    assertFalse(schedule.isOccupied(getPeriod("12PM"), getRoom("Harper135")));
+    assertTrue(schedule.isTeaching(getTeacher("Dave"), getPeriod("11AM")));
+    assertFalse(schedule.isTeaching(getTeacher("Carol"), getPeriod("12PM")));
+    assertEquals(getPeriod("11AM"), schedule.earliestEnd(origami.getCourse()));
+    assertNull(schedule.earliestEnd(math.getCourse()));
+    assertTrue(schedule.changesSince(mark).isEmpty());
+  }
+
+  public void testRejectedAssignmentNotJournaled() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    assertTrue(schedule.assignStart(assignment("10AM", "Harper135", "MathCourse"))
+        .getResult()
+        .isValid());
+    int mark = schedule.mark();
+    // Carol teaches both science and math.
+    assertFalse(schedule.assignStart(assignment("10AM", "Harper141", "ScienceCourse"))
+        .getResult()
+        .isValid());
+    assertEquals(mark, schedule.mark());
+  }
+
+  public void testCommitDiscardsJournal() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    StartAssignment math = assignment("10AM", "Harper135", "MathCourse");
+    schedule.assignStart(math);
+    schedule.commit();
+    assertEquals(0, schedule.mark());
+    schedule.rollback();
+    assertEquals(ImmutableSet.of(math), schedule.getStartAssignments());
+    assertTrue(schedule.isOccupied(getPeriod("10AM"), getRoom("Harper135")));
+  }
+
+  public void testSnapshotIsolatedFromLaterModifications() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    schedule.assignStart(origami);
+    Schedule snapshot = schedule.snapshot();
+    assertFalse(snapshot.isMutable());
+
+    schedule.removeStartingAt(origami.getPeriod(), origami.getRoom());
+    schedule.assignStart(assignment("10AM", "Harper135", "MathCourse"));
+    assertEquals(ImmutableSet.of(origami), snapshot.getStartAssignments());
+    assertEquals(
+        origami.getSection(),
+        snapshot.occupantAt(getPeriod("10AM"), getRoom("Harper135")));
+    assertTrue(snapshot.isOccupied(getPeriod("11AM"), getRoom("Harper135")));
+    assertTrue(snapshot.isTeaching(getTeacher("Dave"), getPeriod("11AM")));
+    assertFalse(snapshot.isTeaching(getTeacher("Carol"), getPeriod("10AM")));
+  }
+
+  public void testRollbackAfterSnapshot() {
+    Schedule schedule = emptySchedule().mutableCopy();
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    schedule.assignStart(origami);
+    int mark = schedule.mark();
+    schedule.assignStart(assignment("12PM", "Harper135", "MathCourse"));
+    Schedule snapshot = schedule.snapshot();
+    schedule.rollback(mark);
+    assertEquals(2, snapshot.getStartAssignments().size());
+    assertTrue(snapshot.isOccupied(getPeriod("12PM"), getRoom("Harper135")));
+    assertTrue(snapshot.isTeaching(getTeacher("Carol"), getPeriod("12PM")));
+    assertFalse(schedule.isOccupied(getPeriod("12PM"), getRoom("Harper135")));
+  }
+
+  public void testMutableCopiesIsolated() {
+    Schedule first = emptySchedule().mutableCopy();
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    // the first schedule now owns its copy of the block's indexes
+    first.assignStart(origami);
+    Schedule second = first.mutableCopy();
+
+    first.removeStartingAt(origami.getPeriod(), origami.getRoom());
+    assertTrue(second.isOccupied(getPeriod("11AM"), getRoom("Harper135")));
+    assertTrue(second.isTeaching(getTeacher("Dave"), getPeriod("10AM")));
+
+    second.assignStart(assignment("12PM", "Harper135", "MathCourse"));
+    assertFalse(first.isOccupied(getPeriod("12PM"), getRoom("Harper135")));
+    assertFalse(first.isTeaching(getTeacher("Carol"), getPeriod("12PM")));
+    assertTrue(first.getStartAssignments().isEmpty());
+  }
+
+  public void testMutableCopyOfPersistentSchedule() {
+    StartAssignment math = assignment("10AM", "Harper135", "MathCourse");
+    Schedule persistent = emptySchedule().assignStart(math).getNewState();
+    Schedule mutable = persistent.mutableCopy();
+    mutable.removeStartingAt(math.getPeriod(), math.getRoom());
+    assertEquals(ImmutableSet.of(math), persistent.getStartAssignments());
+    assertTrue(persistent.isOccupied(getPeriod("10AM"), getRoom("Harper135")));
+    assertTrue(persistent.isTeaching(getTeacher("Carol"), getPeriod("10AM")));
+  }
+
+  public void testRemovingOneOfOverlappingRoomSections() {
+    // Origami runs from 10AM through 11AM in Harper142
+    StartAssignment origami = assignment("10AM", "Harper142", "OrigamiCourse");
+    StartAssignment pirates = assignment("11AM", "Harper142", "PiratesCourse");
+    ClassPeriod eleven = pirates.getPeriod();
+    Room room = pirates.getRoom();
+    for (StartAssignment last : ImmutableList.of(origami, pirates)) {
+      Schedule schedule = overlapping(origami, pirates, last);
+      assertFalse(schedule.isFreeExcept(pirates, origami.getSection(), null));
+      assertTrue(schedule.isFreeExcept(pirates, origami.getSection(), pirates.getSection()));
+
+      schedule.removeStartingAt(pirates.getPeriod(), pirates.getRoom());
+      assertTrue(schedule.isOccupied(eleven, room));
+      assertEquals(origami.getSection(), schedule.occupantAt(eleven, room));
+      assertEquals(0, schedule.slack(pirates));
+      assertFalse(schedule.isFreeExcept(pirates, pirates.getSection(), null));
+      assertTrue(schedule.isFreeExcept(pirates, origami.getSection(), null));
+
+      schedule.rollback();
+      schedule.removeStartingAt(origami.getPeriod(), origami.getRoom());
+      assertFalse(schedule.isOccupied(origami.getPeriod(), room));
+      assertEquals(pirates.getSection(), schedule.occupantAt(eleven, room));
+    }
+  }
+
+  public void testRemovingOneOfOverlappingTeacherSections() {
+    // Carol teaches both at 10AM
+    StartAssignment science = assignment("10AM", "Harper135", "ScienceCourse");
+    StartAssignment math = assignment("10AM", "Harper141", "MathCourse");
+    Teacher carol = getTeacher("Carol");
+    ClassPeriod ten = science.getPeriod();
+    for (StartAssignment last : ImmutableList.of(science, math)) {
+      Schedule schedule = overlapping(science, math, last);
+      StartAssignment other = assignment("10AM", "Harper130", "MathCourse");
+      assertFalse(schedule.isFreeExcept(other, science.getSection(), null));
+      assertTrue(schedule.isFreeExcept(other, science.getSection(), math.getSection()));
+
+      schedule.removeStartingAt(math.getPeriod(), math.getRoom());
+      assertTrue(schedule.isTeaching(carol, ten));
+      assertEquals(science, schedule.teachingAt(carol, ten).get().getStartAssignment());
+      assertTrue(schedule.hasTeacherConflict(math));
+      assertTrue(schedule.isFreeExcept(other, science.getSection(), null));
+
+      schedule.removeStartingAt(science.getPeriod(), science.getRoom());
+      assertFalse(schedule.isTeaching(carol, ten));
+      assertFalse(schedule.teachingAt(carol, ten).isPresent());
+    }
+  }
+
+  /*
+   * Returns a mutable schedule with the specified overlapping assignments, in which the specified
+   * one of them was indexed last.
+   */
+  private Schedule overlapping(StartAssignment a, StartAssignment b, StartAssignment last) {
+    Schedule schedule = factory().createTrusted(ImmutableList.of(a, b)).mutableCopy();
+    schedule.removeStartingAt(last.getPeriod(), last.getRoom());
+    schedule.rollback();
+    return schedule;
+  }
+}
@@ -0,0 +1,156 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Course;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.logic.ScheduleValidator;
+import org.learningu.scheduling.schedule.SerialSchedules.SerialSchedule;
+import org.learningu.scheduling.util.ModifiedState;
+
+/**
+ * Tests that schedules built in bulk, directly or by deserialization, are indistinguishable from
+ * schedules built one assignment at a time.
+ *
+ * @author lowasser
+ */
+public class SchedulesTest extends BaseScheduleTest {
+  private List<StartAssignment> assigns;
+  private Schedule incremental;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    assigns = ImmutableList.of(
+        assignment("11AM", "Harper130", "PiratesCourse"),
+        assignment("10AM", "Harper142", "OrigamiCourse"),
+        assignment("10AM", "Harper135", "ScienceCourse"),
+        assignment("10AM", "Harper141", "ZombiesCourse"),
+        assignment("11AM", "Harper135", "MathCourse"));
+    incremental = emptySchedule();
+    for (StartAssignment assign : assigns) {
+      ModifiedState<ScheduleValidator, Schedule> result = incremental.assignStart(assign);
+      assertTrue(assign.toString(), result.getResult().isValid());
+      incremental = result.getNewState();
+    }
+  }
+
+  public void testEmpty() {
+    assertSameSchedule(
+        emptySchedule(),
+        factory().createTrusted(ImmutableList.<StartAssignment> of()));
+    assertSameSchedule(
+        emptySchedule(),
+        Schedules.deserialize(factory(), SerialSchedule.getDefaultInstance()));
+  }
+
+  public void testCreateTrusted() {
+    assertSameSchedule(incremental, factory().createTrusted(assigns));
+    assertSameSchedule(
+        incremental,
+        factory().createTrusted(ImmutableList.copyOf(assigns).reverse()));
+  }
+
+  public void testDeserialize() {
+    SerialSchedule serial = Schedules.serialize(incremental);
+    assertEquals(assigns.size(), serial.getAssignmentCount());
+    assertSameSchedule(incremental, Schedules.deserialize(factory(), serial));
+  }
+
+  public void testDeserializeInParallel() {
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      assertSameSchedule(
+          incremental,
+          Schedules.deserialize(factory(), Schedules.serialize(incremental), service));
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  public void testBulkLoadedScheduleIsUsable() {
+    Schedule loaded = factory().createTrusted(assigns).mutableCopy();
+    assertTrue(loaded.removeStartingAt(getPeriod("11AM"), getRoom("Harper135")).getResult()
+        .isPresent());
+    assertFalse(loaded.isOccupied(getPeriod("11AM"), getRoom("Harper135")));
+    assertFalse(loaded.isTeaching(getTeacher("Carol"), getPeriod("11AM")));
+    // Carol still teaches Science at 10AM
+    assertFalse(loaded
+        .assignStart(assignment("10AM", "Harper130", "MathCourse"))
+        .getResult()
+        .isValid());
+    assertTrue(loaded
+        .assignStart(assignment("12PM", "Harper135", "MathCourse"))
+        .getResult()
+        .isValid());
+    loaded.rollback();
+    assertSameSchedule(incremental, loaded);
+  }
+
+  public void testDeserializeRejectsConflicts() {
+    // Carol teaches both at 10AM
+    SerialSchedule serial = Schedules.serialize(factory().createTrusted(ImmutableList.of(
+        assignment("10AM", "Harper135", "ScienceCourse"),
+        assignment("10AM", "Harper141", "MathCourse"))));
+    try {
+      Schedules.deserialize(factory(), serial);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().startsWith("Schedule conflicts: "));
+    }
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      Schedules.deserialize(factory(), serial, service);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  public void testDeserializeRejectsRoomOverlap() {
+    // Origami runs from 10AM through 11AM in Harper142
+    SerialSchedule serial = Schedules.serialize(factory().createTrusted(ImmutableList.of(
+        assignment("10AM", "Harper142", "OrigamiCourse"),
+        assignment("11AM", "Harper142", "PiratesCourse"))));
+    try {
+      Schedules.deserialize(factory(), serial);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  private static void assertSameSchedule(Schedule expected, Schedule actual) {
+    assertEquals(expected, actual);
+    assertEquals(expected.getStartAssignments(), actual.getStartAssignments());
+    Program program = expected.getProgram();
+    for (Section section : program.getSections()) {
+      assertEquals(expected.assignmentOf(section), actual.assignmentOf(section));
+    }
+    for (Course course : program.getCourses()) {
+      assertEquals(expected.earliestEnd(course), actual.earliestEnd(course));
+    }
+    for (ClassPeriod period : program.getPeriods()) {
+      assertEquals(expected.occurringAt(period), actual.occurringAt(period));
+      for (Room room : program.getRooms()) {
+        assertEquals(expected.startingAt(period, room), actual.startingAt(period, room));
+        assertEquals(expected.occurringAt(period, room), actual.occurringAt(period, room));
+        assertEquals(expected.isOccupied(period, room), actual.isOccupied(period, room));
+        assertEquals(expected.occupantAt(period, room), actual.occupantAt(period, room));
+      }
+      for (Teacher teacher : program.getTeachers()) {
+        assertEquals(expected.isTeaching(teacher, period), actual.isTeaching(teacher, period));
+        assertEquals(expected.teachingAt(teacher, period), actual.teachingAt(teacher, period));
+      }
+    }
+    assertEquals(expected.audit().isClean(), actual.audit().isClean());
+  }
+}
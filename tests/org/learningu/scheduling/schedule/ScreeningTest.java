@@ -0,0 +1,159 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Teacher;
+
+/**
+ * Tests for {@link Schedule#screen}.
+ *
+ * @author lowasser
+ */
+public class ScreeningTest extends BaseScheduleTest {
+  private Schedule schedule;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    schedule = emptySchedule();
+    schedule = schedule.assignStart(assignment("10AM", "Harper135", "ScienceCourse")).getNewState();
+    schedule = schedule.assignStart(assignment("10AM", "Harper142", "OrigamiCourse")).getNewState();
+    assertEquals(2, schedule.getStartAssignments().size());
+  }
+
+  public void testRoomBusy() {
+    Screening screening = screen(assignment("10AM", "Harper135", "PiratesCourse"));
+    assertFalse(screening.isRoomFree(0));
+    assertTrue(screening.areTeachersFree(0));
+    assertFalse(screening.isAssignable(0));
+  }
+
+  public void testRoomBusyInLaterPeriod() {
+    // Origami occupies Harper142 at 11AM too
+    Screening screening = screen(assignment("11AM", "Harper142", "PiratesCourse"));
+    assertFalse(screening.isRoomFree(0));
+    assertFalse(screening.isAssignable(0));
+  }
+
+  public void testTeachersBusy() {
+    Screening screening = screen(assignment("10AM", "Harper141", "MathCourse"));
+    assertTrue(screening.isRoomFree(0));
+    assertFalse(screening.areTeachersFree(0));
+    assertFalse(screening.isAssignable(0));
+  }
+
+  public void testRejected() {
+    // the room and teachers are free, but the section is already scheduled
+    Screening screening = screen(assignment("11AM", "Harper130", "ScienceCourse"));
+    assertTrue(screening.isRoomFree(0));
+    assertTrue(screening.areTeachersFree(0));
+    assertFalse(screening.isAssignable(0));
+  }
+
+  public void testAssignable() {
+    Screening screening = screen(assignment("11AM", "Harper130", "PiratesCourse"));
+    assertTrue(screening.isAssignable(0));
+    assertTrue(screening.assignable().get(0));
+  }
+
+  public void testFlagsMatchSchedule() {
+    List<StartAssignment> candidates = allCandidates();
+    Screening screening = schedule.screen(candidates);
+    assertEquals(candidates.size(), screening.size());
+    for (int i = 0; i < candidates.size(); i++) {
+      StartAssignment candidate = candidates.get(i);
+      assertEquals(candidate, screening.getCandidate(i));
+      assertEquals(candidate.toString(), isRoomFree(candidate), screening.isRoomFree(i));
+      assertEquals(candidate.toString(), areTeachersFree(candidate), screening.areTeachersFree(i));
+      assertEquals(
+          candidate.toString(),
+          schedule.assignStart(candidate).getResult().isValid(),
+          screening.isAssignable(i));
+      assertEquals(screening.isAssignable(i), screening.assignable().get(i));
+    }
+  }
+
+  public void testExecutorMatchesSingleThreaded() {
+    // enough candidates to be split into several chunks, grouped by section
+    List<StartAssignment> candidates = Lists.newArrayList();
+    while (candidates.size() <= 4 * Schedule.SCREENING_CHUNK) {
+      candidates.addAll(allCandidates());
+    }
+    Screening expected = schedule.screen(candidates);
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      Screening actual = schedule.screen(candidates, service);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < candidates.size(); i++) {
+        assertEquals(expected.isRoomFree(i), actual.isRoomFree(i));
+        assertEquals(expected.areTeachersFree(i), actual.areTeachersFree(i));
+        assertEquals(expected.isAssignable(i), actual.isAssignable(i));
+      }
+      assertEquals(expected.assignable(), actual.assignable());
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  private Screening screen(StartAssignment candidate) {
+    Screening screening = schedule.screen(ImmutableList.of(candidate));
+    assertEquals(1, screening.size());
+    assertEquals(
+        schedule.assignStart(candidate).getResult().isValid(),
+        screening.isAssignable(0));
+    return screening;
+  }
+
+  private boolean isRoomFree(StartAssignment candidate) {
+    for (ClassPeriod period : candidate.getPresentPeriods()) {
+      if (schedule.isOccupied(period, candidate.getRoom())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean areTeachersFree(StartAssignment candidate) {
+    Program program = schedule.getProgram();
+    for (Teacher teacher : program.teachersFor(candidate.getSection())) {
+      for (ClassPeriod period : candidate.getPresentPeriods()) {
+        if (schedule.isTeaching(teacher, period)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Returns every assignment of a section to a room and start period that fits in the time block,
+   * grouped by section.
+   */
+  private List<StartAssignment> allCandidates() {
+    Program program = schedule.getProgram();
+    List<StartAssignment> candidates = Lists.newArrayList();
+    for (Section section : program.getSections()) {
+      for (ClassPeriod period : program.getPeriods()) {
+        if (period.getIndex() + section.getPeriodLength() > period
+            .getTimeBlock()
+            .getPeriods()
+            .size()) {
+          continue;
+        }
+        for (Room room : program.getRooms()) {
+          candidates.add(StartAssignment.create(period, room, section));
+        }
+      }
+    }
+    return candidates;
+  }
+}
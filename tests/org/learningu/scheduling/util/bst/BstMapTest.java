@@ -8,8 +8,10 @@ import java.util.SortedMap;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedMap.Builder;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.testing.MapTestSuiteBuilder;
 import com.google.common.collect.testing.SortedMapInterfaceTest;
 import com.google.common.collect.testing.TestStringMapGenerator;
@@ -43,6 +45,32 @@ public class BstMapTest extends SortedMapInterfaceTest<String, String> {
         .named("BstMap")
         .withFeatures(CollectionSize.ANY, CollectionFeature.KNOWN_ORDER)
         .createTestSuite());
+    suite.addTest(MapTestSuiteBuilder
+        .using(new TestStringMapGenerator() {
+
+          @Override
+          protected Map<String, String> create(Entry<String, String>[] entries) {
+            Builder<String, String> builder = ImmutableSortedMap.naturalOrder();
+            for (Entry<String, String> entry : entries) {
+              builder.put(entry.getKey(), entry.getValue());
+            }
+            return BstMap.copyOfSorted(
+                Ordering.natural(),
+                ImmutableList.copyOf(builder.build().entrySet()));
+          }
+
+          @Override
+          public Iterable<Entry<String, String>> order(List<Entry<String, String>> insertionOrder) {
+            Builder<String, String> builder = ImmutableSortedMap.naturalOrder();
+            for (Entry<String, String> entry : insertionOrder) {
+              builder.put(entry.getKey(), entry.getValue());
+            }
+            return builder.build().entrySet();
+          }
+        })
+        .named("BstMap.copyOfSorted")
+        .withFeatures(CollectionSize.ANY, CollectionFeature.KNOWN_ORDER)
+        .createTestSuite());
     suite.addTestSuite(BstMapTest.class);
     return suite;
   }